@@ -0,0 +1,191 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IntHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bidirectional A* over an IntAStarGraph. A forward search from the start
+ * and a backward search from the end run at the same time, and the one with
+ * the smaller fringe key is expanded next.
+ *
+ * Both searches use the average potential pf(v) = (h(v, end) - h(v, start)) / 2
+ * (and -pf(v) for the backward search). With it, both searches are Dijkstra
+ * on the same graph of reduced edge weights, which are non-negative as long
+ * as the heuristic is consistent. So the search can stop once the two
+ * smallest fringe keys add up to at least the best path seen so far.
+ */
+public class BidirectionalAStarSolver implements ShortestPathsSolver<Long> {
+    private static final ThreadLocal<SearchWorkspace> FORWARD_WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+    private static final ThreadLocal<SearchWorkspace> BACKWARD_WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+
+    private SolverOutcome outcome;
+    private List<Long> solution = new ArrayList<>();
+    private double solutionWeight;
+    private int numStatesExplored;
+    private double explorationTime;
+
+    private final IntAStarGraph input;
+    private final int s;
+    private final int t;
+    private double best = Double.POSITIVE_INFINITY;
+    private int meet = -1;
+
+    /**
+     * Finds the shortest path from START to END using the calling thread's
+     * workspaces. Note that timeout passed in is in seconds.
+     */
+    public BidirectionalAStarSolver(IntAStarGraph input, long start, long end, double timeout) {
+        this(input, start, end, timeout, FORWARD_WORKSPACES.get(), BACKWARD_WORKSPACES.get());
+    }
+
+    public BidirectionalAStarSolver(IntAStarGraph input, long start, long end, double timeout,
+                                    SearchWorkspace forward, SearchWorkspace backward) {
+        Stopwatch sw = new Stopwatch();
+        this.input = input;
+        s = input.indexOf(start);
+        t = input.indexOf(end);
+        if (s < 0 || t < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+            explorationTime = sw.elapsedTime();
+            return;
+        }
+
+        forward.reset(input.numVertices());
+        backward.reset(input.numVertices());
+        IntHeapMinPQ forwardPQ = forward.fringe();
+        IntHeapMinPQ backwardPQ = backward.fringe();
+        forward.relax(s, 0.0, -1);
+        forwardPQ.add(s, potential(s));
+        backward.relax(t, 0.0, -1);
+        backwardPQ.add(t, -potential(t));
+        if (s == t) {
+            best = 0.0;
+            meet = s;
+        }
+
+        while (!forwardPQ.isEmpty() && !backwardPQ.isEmpty()) {
+            // Every path not yet seen is at least as long as the sum of the two smallest keys.
+            if (forwardPQ.smallestPriority() + backwardPQ.smallestPriority() >= best) {
+                break;
+            }
+
+            if (forwardPQ.smallestPriority() <= backwardPQ.smallestPriority()) {
+                expandForward(forward, backward);
+            } else {
+                expandBackward(forward, backward);
+            }
+            numStatesExplored += 1;
+
+            // Check time spent, if exceeds the timeout, return.
+            explorationTime = sw.elapsedTime();
+            if (explorationTime > timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+        }
+
+        if (meet < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            solution = joinPaths(forward, backward);
+        }
+        explorationTime = sw.elapsedTime();
+    }
+
+    /** Average potential of V, measured from the forward search's point of view. */
+    private double potential(int v) {
+        return (input.estimatedDistanceToGoal(v, t) - input.estimatedDistanceToGoal(v, s)) / 2;
+    }
+
+    private void expandForward(SearchWorkspace forward, SearchWorkspace backward) {
+        IntHeapMinPQ pq = forward.fringe();
+        int v = pq.removeSmallest();
+        double distToV = forward.distTo(v);
+        for (int e = input.edgeBegin(v); e < input.edgeEnd(v); e += 1) {
+            int w = input.edgeTarget(e);
+            double distToW = distToV + input.edgeWeight(e);
+            if (distToW < forward.distTo(w)) {
+                forward.relax(w, distToW, v);
+                double priority = distToW + potential(w);
+                if (pq.contains(w)) {
+                    pq.changePriority(w, priority);
+                } else {
+                    pq.add(w, priority);
+                }
+                updateBest(w, distToW + backward.distTo(w));
+            }
+        }
+    }
+
+    private void expandBackward(SearchWorkspace forward, SearchWorkspace backward) {
+        IntHeapMinPQ pq = backward.fringe();
+        int v = pq.removeSmallest();
+        double distFromV = backward.distTo(v);
+        for (int e = input.inEdgeBegin(v); e < input.inEdgeEnd(v); e += 1) {
+            int w = input.inEdgeSource(e);
+            double distFromW = distFromV + input.inEdgeWeight(e);
+            if (distFromW < backward.distTo(w)) {
+                backward.relax(w, distFromW, v);
+                double priority = distFromW - potential(w);
+                if (pq.contains(w)) {
+                    pq.changePriority(w, priority);
+                } else {
+                    pq.add(w, priority);
+                }
+                updateBest(w, forward.distTo(w) + distFromW);
+            }
+        }
+    }
+
+    private void updateBest(int v, double pathLength) {
+        if (pathLength < best) {
+            best = pathLength;
+            meet = v;
+        }
+    }
+
+    /** Start .. meet comes from the forward parents, meet .. end from the backward ones. */
+    private List<Long> joinPaths(SearchWorkspace forward, SearchWorkspace backward) {
+        List<Long> path = IntAStarSolver.pathTo(input, forward, meet);
+        for (int v = backward.edgeTo(meet); v >= 0; v = backward.edgeTo(v)) {
+            path.add(input.idOf(v));
+        }
+        return path;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    /**
+     * The total number of priority queue dequeue operations, counting both
+     * directions.
+     */
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
@@ -0,0 +1,84 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IntHeapMinPQ;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Shortest path distances between every source and every target of an
+ * IntAStarGraph. Each source gets one Dijkstra sweep, which stops as soon
+ * as every target is settled, instead of a separate A* search per target.
+ * The sweeps are independent and run in parallel, each thread reusing its
+ * own SearchWorkspace.
+ */
+public class DistanceMatrix {
+    private static final ThreadLocal<SearchWorkspace> WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+
+    private DistanceMatrix() {
+    }
+
+    /**
+     * Returns the matrix whose entry [i][j] is the length of the shortest
+     * path from vertex SOURCES[i] to vertex TARGETS[j] of G, by dense index,
+     * or infinity if there is none.
+     */
+    public static double[][] compute(IntAStarGraph g, int[] sources, int[] targets) {
+        boolean[] isTarget = new boolean[g.numVertices()];
+        int numTargets = 0;
+        for (int t : targets) {
+            if (t >= 0 && !isTarget[t]) {
+                isTarget[t] = true;
+                numTargets += 1;
+            }
+        }
+        int distinctTargets = numTargets;
+        double[][] matrix = new double[sources.length][];
+        IntStream.range(0, sources.length).parallel().forEach(i ->
+                matrix[i] = row(g, sources[i], targets, isTarget, distinctTargets, WORKSPACES.get()));
+        return matrix;
+    }
+
+    /**
+     * Runs Dijkstra from S until all NUMTARGETS vertices marked in ISTARGET
+     * are settled, and returns the distances to TARGETS.
+     */
+    private static double[] row(IntAStarGraph g, int s, int[] targets, boolean[] isTarget,
+                                int numTargets, SearchWorkspace ws) {
+        double[] row = new double[targets.length];
+        if (s < 0) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            return row;
+        }
+        ws.reset(g.numVertices());
+        IntHeapMinPQ pq = ws.fringe();
+        ws.relax(s, 0.0, -1);
+        pq.add(s, 0.0);
+
+        int settled = 0;
+        while (!pq.isEmpty() && settled < numTargets) {
+            int v = pq.removeSmallest();
+            if (isTarget[v]) {
+                settled += 1;
+            }
+            double distToV = ws.distTo(v);
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e += 1) {
+                int w = g.edgeTarget(e);
+                double distToW = distToV + g.edgeWeight(e);
+                if (distToW < ws.distTo(w)) {
+                    ws.relax(w, distToW, v);
+                    if (pq.contains(w)) {
+                        pq.changePriority(w, distToW);
+                    } else {
+                        pq.add(w, distToW);
+                    }
+                }
+            }
+        }
+        for (int j = 0; j < targets.length; j += 1) {
+            row[j] = targets[j] < 0 ? Double.POSITIVE_INFINITY : ws.distTo(targets[j]);
+        }
+        return row;
+    }
+}
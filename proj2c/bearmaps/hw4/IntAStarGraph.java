@@ -0,0 +1,45 @@
+package bearmaps.hw4;
+
+
+/**
+ * A graph whose vertices are the dense integers 0 .. numVertices() - 1, with
+ * the outgoing edges of every vertex stored contiguously. Edge e leaving
+ * vertex v satisfies edgeBegin(v) <= e < edgeEnd(v), so callers can walk
+ * neighbors without allocating any WeightedEdge objects. Incoming edges are
+ * indexed the same way by inEdgeBegin(v) <= e < inEdgeEnd(v), for searches
+ * that run backwards from the goal.
+ */
+public interface IntAStarGraph {
+    int numVertices();
+
+    /* Returns the dense index of the vertex with the given id, or -1 if absent. */
+    int indexOf(long id);
+
+    /* Returns the id of the vertex with dense index V. */
+    long idOf(int v);
+
+    int edgeBegin(int v);
+    int edgeEnd(int v);
+    int edgeTarget(int e);
+    double edgeWeight(int e);
+
+    int inEdgeBegin(int v);
+    int inEdgeEnd(int v);
+    int inEdgeSource(int e);
+    double inEdgeWeight(int e);
+
+    double estimatedDistanceToGoal(int s, int goal);
+
+    /**
+     * Hashes the vertex ids and edge count of G, so that data precomputed
+     * for one graph and saved to disk is not loaded against another.
+     */
+    static long fingerprint(IntAStarGraph g) {
+        long h = g.numVertices();
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            h = h * 31 + g.idOf(v);
+        }
+        int n = g.numVertices();
+        return h * 31 + (n == 0 ? 0 : g.edgeEnd(n - 1));
+    }
+}
@@ -0,0 +1,123 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IntHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* over an IntAStarGraph. Works exactly like AStarSolver, but keeps its
+ * g-scores, parents and fringe in a reusable SearchWorkspace instead of
+ * boxed HashMaps, so a query allocates nothing except the solution list.
+ */
+public class IntAStarSolver implements ShortestPathsSolver<Long> {
+    /** One workspace per thread, reused by every query that thread runs. */
+    private static final ThreadLocal<SearchWorkspace> WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+
+    private SolverOutcome outcome;
+    private List<Long> solution = new ArrayList<>();
+    private double solutionWeight;
+    private int numStatesExplored;
+    private double explorationTime;
+
+    /**
+     * Finds the shortest path from START to END using the calling thread's
+     * workspace. Note that timeout passed in is in seconds.
+     */
+    public IntAStarSolver(IntAStarGraph input, long start, long end, double timeout) {
+        this(input, start, end, timeout, WORKSPACES.get());
+    }
+
+    public IntAStarSolver(IntAStarGraph input, long start, long end, double timeout,
+                          SearchWorkspace ws) {
+        Stopwatch sw = new Stopwatch();
+        int s = input.indexOf(start);
+        int t = input.indexOf(end);
+        if (s < 0 || t < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+            explorationTime = sw.elapsedTime();
+            return;
+        }
+
+        ws.reset(input.numVertices());
+        IntHeapMinPQ pq = ws.fringe();
+        ws.relax(s, 0.0, -1);
+        pq.add(s, input.estimatedDistanceToGoal(s, t));
+
+        while (!pq.isEmpty()) {
+            int v = pq.removeSmallest();
+
+            // Check whether the end is reached or not.
+            if (v == t) {
+                outcome = SolverOutcome.SOLVED;
+                solutionWeight = ws.distTo(t);
+                solution = pathTo(input, ws, t);
+                explorationTime = sw.elapsedTime();
+                return;
+            }
+            numStatesExplored += 1;
+
+            // Check time spent, if exceeds the timeout, return.
+            explorationTime = sw.elapsedTime();
+            if (explorationTime > timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+
+            double distToV = ws.distTo(v);
+            for (int e = input.edgeBegin(v); e < input.edgeEnd(v); e += 1) {
+                int w = input.edgeTarget(e);
+                double distToW = distToV + input.edgeWeight(e);
+                if (distToW < ws.distTo(w)) {
+                    ws.relax(w, distToW, v);
+                    double priority = distToW + input.estimatedDistanceToGoal(w, t);
+                    if (pq.contains(w)) {
+                        pq.changePriority(w, priority);
+                    } else {
+                        pq.add(w, priority);
+                    }
+                }
+            }
+        }
+        outcome = SolverOutcome.UNSOLVABLE;
+        explorationTime = sw.elapsedTime();
+    }
+
+    /** Follows parent pointers back from T and returns the path as vertex ids. */
+    static List<Long> pathTo(IntAStarGraph input, SearchWorkspace ws, int t) {
+        List<Long> path = new ArrayList<>();
+        for (int v = t; v >= 0; v = ws.edgeTo(v)) {
+            path.add(input.idOf(v));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
@@ -0,0 +1,107 @@
+package bearmaps.hw4;
+
+import java.util.List;
+
+/**
+ * Wraps a graph and replaces its heuristic with the ALT bound from a set of
+ * Landmarks, so any A* solver over the wrapped graph settles fewer vertices
+ * without changing. Neighbors and edges are passed straight through.
+ *
+ * The great-circle estimate of the wrapped graph is kept as a floor: near
+ * the landmarks the triangle bound is tight, but far from all of them it can
+ * be weaker than a straight line. Both are admissible, so their max is too.
+ */
+public class LandmarkAStarGraph<G extends AStarGraph<Long> & IntAStarGraph>
+        implements AStarGraph<Long>, IntAStarGraph {
+    private final G graph;
+    private final Landmarks landmarks;
+
+    public LandmarkAStarGraph(G graph, Landmarks landmarks) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+    }
+
+    /** Returns the wrapped graph. */
+    public G graph() {
+        return graph;
+    }
+
+    public Landmarks landmarks() {
+        return landmarks;
+    }
+
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        return graph.neighbors(v);
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        int sIndex = graph.indexOf(s);
+        int goalIndex = graph.indexOf(goal);
+        if (sIndex < 0 || goalIndex < 0) {
+            return graph.estimatedDistanceToGoal(s, goal);
+        }
+        return estimatedDistanceToGoal(sIndex, goalIndex);
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(int s, int goal) {
+        return Math.max(landmarks.lowerBound(s, goal), graph.estimatedDistanceToGoal(s, goal));
+    }
+
+    @Override
+    public int numVertices() {
+        return graph.numVertices();
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return graph.indexOf(id);
+    }
+
+    @Override
+    public long idOf(int v) {
+        return graph.idOf(v);
+    }
+
+    @Override
+    public int edgeBegin(int v) {
+        return graph.edgeBegin(v);
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return graph.edgeEnd(v);
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return graph.edgeTarget(e);
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return graph.edgeWeight(e);
+    }
+
+    @Override
+    public int inEdgeBegin(int v) {
+        return graph.inEdgeBegin(v);
+    }
+
+    @Override
+    public int inEdgeEnd(int v) {
+        return graph.inEdgeEnd(v);
+    }
+
+    @Override
+    public int inEdgeSource(int e) {
+        return graph.inEdgeSource(e);
+    }
+
+    @Override
+    public double inEdgeWeight(int e) {
+        return graph.inEdgeWeight(e);
+    }
+}
@@ -0,0 +1,310 @@
+package bearmaps.hw4;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2ab.IntHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Exact shortest path distances from and to a handful of landmark vertices,
+ * for the ALT (A*, Landmarks, Triangle inequality) heuristic. For every
+ * landmark L the triangle inequality gives two lower bounds on dist(v, t):
+ * dist(L, t) - dist(L, v) and dist(v, L) - dist(t, L).
+ *
+ * The tables are stored vertex-major, so all landmark distances of a vertex
+ * sit next to each other in memory.
+ *
+ * Run main to pick landmarks for an OSM file and write them to disk:
+ * java bearmaps.hw4.Landmarks berkeley-2019.osm.xml berkeley-2019.alt 16
+ */
+public class Landmarks {
+    private static final int MAGIC = 0x414c5431; // "ALT1"
+    private static final int VERSION = 1;
+
+    /** How landmarks are picked. */
+    public enum Selection {
+        /** Each new landmark is the vertex farthest from all landmarks picked so far. */
+        FARTHEST,
+        /**
+         * Goldberg and Harrelson's "avoid": grow a shortest path tree from a
+         * random root, weigh every vertex by how badly the current landmarks
+         * bound its distance from the root, and pick a leaf of the heaviest
+         * subtree that has no landmark in it yet.
+         */
+        AVOID
+    }
+
+    private final int numVertices;
+    private final int[] landmarks;
+    private final double[] fromLandmark; // fromLandmark[v * k + i] = dist(landmarks[i], v)
+    private final double[] toLandmark;   // toLandmark[v * k + i] = dist(v, landmarks[i])
+
+    private Landmarks(int numVertices, int[] landmarks, double[] fromLandmark,
+                      double[] toLandmark) {
+        this.numVertices = numVertices;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    /**
+     * Picks NUMLANDMARKS landmarks of G with the given strategy and
+     * computes their distance tables. SEED makes the choice repeatable.
+     */
+    public static Landmarks select(IntAStarGraph g, int numLandmarks, Selection selection,
+                                   long seed) {
+        int n = g.numVertices();
+        int k = Math.min(numLandmarks, n);
+        Landmarks result = new Landmarks(n, new int[k], new double[n * k], new double[n * k]);
+        if (k == 0) {
+            return result;
+        }
+
+        Random random = new Random(seed);
+        SearchWorkspace ws = new SearchWorkspace();
+        double[] dist = new double[n];
+        int[] settleOrder = new int[n];
+
+        // The first landmark is the vertex farthest from a random start, for both strategies.
+        int start = random.nextInt(n);
+        shortestDistances(g, start, false, ws, dist, settleOrder);
+        int first = farthest(dist, start);
+        double[] minDist = new double[n];
+        Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i < k; i += 1) {
+            int landmark;
+            if (i == 0) {
+                landmark = first;
+            } else if (selection == Selection.AVOID) {
+                landmark = result.avoid(g, random.nextInt(n), i, ws, dist, settleOrder);
+            } else {
+                landmark = farthest(minDist, result.landmarks[0]);
+            }
+            result.landmarks[i] = landmark;
+            shortestDistances(g, landmark, false, ws, dist, settleOrder);
+            for (int v = 0; v < n; v += 1) {
+                result.fromLandmark[v * k + i] = dist[v];
+                minDist[v] = Math.min(minDist[v], dist[v]);
+            }
+            shortestDistances(g, landmark, true, ws, dist, settleOrder);
+            for (int v = 0; v < n; v += 1) {
+                result.toLandmark[v * k + i] = dist[v];
+            }
+        }
+        return result;
+    }
+
+    /** Returns the vertex with the largest finite entry of DIST, or FALLBACK if none is. */
+    private static int farthest(double[] dist, int fallback) {
+        int best = fallback;
+        for (int v = 0; v < dist.length; v += 1) {
+            if (dist[v] < Double.POSITIVE_INFINITY && (dist[best] == Double.POSITIVE_INFINITY
+                    || dist[v] > dist[best])) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * One round of the avoid strategy with the first CHOSEN landmarks in
+     * place. Falls back to the farthest vertex from ROOT when every subtree
+     * already holds a landmark.
+     */
+    private int avoid(IntAStarGraph g, int root, int chosen, SearchWorkspace ws, double[] dist,
+                      int[] settleOrder) {
+        int settled = shortestDistances(g, root, false, ws, dist, settleOrder);
+        int n = numVertices;
+        double[] size = new double[n];
+        boolean[] hasLandmark = new boolean[n];
+        int[] heaviestChild = new int[n];
+        Arrays.fill(heaviestChild, -1);
+        for (int i = 0; i < chosen; i += 1) {
+            hasLandmark[landmarks[i]] = true;
+        }
+
+        // Children are settled after their parents, so walking the settle order
+        // backwards finishes every subtree before its root is looked at.
+        for (int i = settled - 1; i >= 0; i -= 1) {
+            int v = settleOrder[i];
+            size[v] += dist[v] - lowerBound(root, v, chosen);
+            if (hasLandmark[v]) {
+                size[v] = 0;
+            }
+            int parent = ws.edgeTo(v);
+            if (parent >= 0) {
+                hasLandmark[parent] |= hasLandmark[v];
+                size[parent] += size[v];
+                if (heaviestChild[parent] < 0 || size[v] > size[heaviestChild[parent]]) {
+                    heaviestChild[parent] = v;
+                }
+            }
+        }
+        if (hasLandmark[root] || size[root] <= 0) {
+            return farthest(dist, root);
+        }
+
+        int v = root;
+        while (heaviestChild[v] >= 0 && size[heaviestChild[v]] > 0) {
+            v = heaviestChild[v];
+        }
+        return v;
+    }
+
+    /**
+     * Dijkstra from SOURCE over all of G, along incoming edges if REVERSE.
+     * Fills DIST (infinity where unreachable) and SETTLEORDER, and returns
+     * the number of vertices settled. Parent pointers are left in WS.
+     */
+    private static int shortestDistances(IntAStarGraph g, int source, boolean reverse,
+                                         SearchWorkspace ws, double[] dist, int[] settleOrder) {
+        ws.reset(g.numVertices());
+        IntHeapMinPQ pq = ws.fringe();
+        ws.relax(source, 0.0, -1);
+        pq.add(source, 0.0);
+        int settled = 0;
+        while (!pq.isEmpty()) {
+            int v = pq.removeSmallest();
+            settleOrder[settled] = v;
+            settled += 1;
+            double distToV = ws.distTo(v);
+            int begin = reverse ? g.inEdgeBegin(v) : g.edgeBegin(v);
+            int end = reverse ? g.inEdgeEnd(v) : g.edgeEnd(v);
+            for (int e = begin; e < end; e += 1) {
+                int w = reverse ? g.inEdgeSource(e) : g.edgeTarget(e);
+                double distToW = distToV + (reverse ? g.inEdgeWeight(e) : g.edgeWeight(e));
+                if (distToW < ws.distTo(w)) {
+                    ws.relax(w, distToW, v);
+                    if (pq.contains(w)) {
+                        pq.changePriority(w, distToW);
+                    } else {
+                        pq.add(w, distToW);
+                    }
+                }
+            }
+        }
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            dist[v] = ws.distTo(v);
+        }
+        return settled;
+    }
+
+    public int numLandmarks() {
+        return landmarks.length;
+    }
+
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /** Returns the best triangle inequality lower bound on dist(V, GOAL). */
+    public double lowerBound(int v, int goal) {
+        return lowerBound(v, goal, landmarks.length);
+    }
+
+    /** Lower bound using only the first COUNT landmarks. Infinite entries prove nothing. */
+    private double lowerBound(int v, int goal, int count) {
+        int k = landmarks.length;
+        int vRow = v * k;
+        int goalRow = goal * k;
+        double best = 0;
+        for (int i = 0; i < count; i += 1) {
+            double fromV = fromLandmark[vRow + i];
+            double fromGoal = fromLandmark[goalRow + i];
+            if (fromV < Double.POSITIVE_INFINITY && fromGoal < Double.POSITIVE_INFINITY) {
+                best = Math.max(best, fromGoal - fromV);
+            }
+            double toV = toLandmark[vRow + i];
+            double toGoal = toLandmark[goalRow + i];
+            if (toV < Double.POSITIVE_INFINITY && toGoal < Double.POSITIVE_INFINITY) {
+                best = Math.max(best, toV - toGoal);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes the landmark tables to FILENAME, together with a fingerprint
+     * of G so that load can refuse to pair them with a different graph.
+     */
+    public void save(String filename, IntAStarGraph g) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(IntAStarGraph.fingerprint(g));
+            out.writeInt(numVertices);
+            out.writeInt(landmarks.length);
+            for (int landmark : landmarks) {
+                out.writeInt(landmark);
+            }
+            for (double d : fromLandmark) {
+                out.writeDouble(d);
+            }
+            for (double d : toLandmark) {
+                out.writeDouble(d);
+            }
+        }
+    }
+
+    /**
+     * Reads landmark tables written by save. Throws an IOException if the
+     * file holds no landmarks or was computed for a different graph than G.
+     */
+    public static Landmarks load(String filename, IntAStarGraph g) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(filename + " is not a landmarks file.");
+            }
+            if (in.readLong() != IntAStarGraph.fingerprint(g)) {
+                throw new IOException(filename + " was computed for a different graph.");
+            }
+            int n = in.readInt();
+            int k = in.readInt();
+            int[] landmarks = new int[k];
+            for (int i = 0; i < k; i += 1) {
+                landmarks[i] = in.readInt();
+            }
+            double[] from = new double[n * k];
+            for (int i = 0; i < from.length; i += 1) {
+                from[i] = in.readDouble();
+            }
+            double[] to = new double[n * k];
+            for (int i = 0; i < to.length; i += 1) {
+                to[i] = in.readDouble();
+            }
+            return new Landmarks(n, landmarks, from, to);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: Landmarks <osm xml file> <output file> <num landmarks>");
+            return;
+        }
+        Stopwatch sw = new Stopwatch();
+        CompactStreetMapGraph graph = new CompactStreetMapGraph(new StreetMapGraph(args[0]));
+        System.out.println("Read " + graph.numVertices() + " vertices and " + graph.numEdges()
+                + " edges in " + sw.elapsedTime() + " seconds.");
+
+        sw = new Stopwatch();
+        Landmarks landmarks = select(graph, Integer.parseInt(args[2]), Selection.AVOID, 0);
+        System.out.println("Picked " + landmarks.numLandmarks() + " landmarks in "
+                + sw.elapsedTime() + " seconds.");
+
+        landmarks.save(args[1], graph);
+        System.out.println("Wrote " + args[1]);
+    }
+}
@@ -0,0 +1,65 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IntHeapMinPQ;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for a shortest paths search over dense int vertices:
+ * g-scores, parent pointers and the fringe. A vertex only counts as reached
+ * if its stamp equals the current epoch, so starting a new search is a
+ * counter increment instead of a pass over every array.
+ *
+ * A workspace is not thread safe; give every thread its own.
+ */
+public class SearchWorkspace {
+    private double[] distTo = new double[0];
+    private int[] edgeTo = new int[0];
+    private int[] stamps = new int[0];
+    private int epoch;
+    private final IntHeapMinPQ fringe = new IntHeapMinPQ(0);
+
+    /** Forgets the previous search and makes room for NUMVERTICES vertices. */
+    public void reset(int numVertices) {
+        if (numVertices > stamps.length) {
+            distTo = new double[numVertices];
+            edgeTo = new int[numVertices];
+            stamps = new int[numVertices];
+            epoch = 0;
+            fringe.ensureCapacity(numVertices);
+        }
+        fringe.clear();
+        epoch += 1;
+        // On wrap-around an old stamp could collide with the new epoch.
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            epoch = 1;
+        }
+    }
+
+    /** Returns true if V has been given a distance during the current search. */
+    public boolean isReached(int v) {
+        return stamps[v] == epoch;
+    }
+
+    /** Returns the best known distance to V, or infinity if V is not reached yet. */
+    public double distTo(int v) {
+        return stamps[v] == epoch ? distTo[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the predecessor of V on the best known path, or -1 for the source. */
+    public int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /** Records that V is reachable with distance DIST through PARENT. */
+    public void relax(int v, double dist, int parent) {
+        distTo[v] = dist;
+        edgeTo[v] = parent;
+        stamps[v] = epoch;
+    }
+
+    public IntHeapMinPQ fringe() {
+        return fringe;
+    }
+}
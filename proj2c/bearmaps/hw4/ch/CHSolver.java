@@ -0,0 +1,177 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.hw4.IntAStarGraph;
+import bearmaps.hw4.SearchWorkspace;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.proj2ab.IntHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shortest paths query on a ContractionHierarchy. A forward Dijkstra from
+ * the start only follows up edges and a backward Dijkstra from the end only
+ * follows down edges in reverse, so both climb the hierarchy and meet near
+ * the top. The best meeting path is then unpacked into original vertex ids,
+ * so the solution looks exactly like one from AStarSolver.
+ *
+ * The workspaces record the hierarchy edge each vertex was reached by,
+ * rather than the previous vertex, because a shortcut has to be unpacked.
+ */
+public class CHSolver implements ShortestPathsSolver<Long> {
+    private static final ThreadLocal<SearchWorkspace> FORWARD_WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+    private static final ThreadLocal<SearchWorkspace> BACKWARD_WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+
+    private SolverOutcome outcome;
+    private List<Long> solution = new ArrayList<>();
+    private double solutionWeight;
+    private int numStatesExplored;
+    private double explorationTime;
+
+    private final ContractionHierarchy ch;
+    private double best = Double.POSITIVE_INFINITY;
+    private int meet = -1;
+
+    /**
+     * Finds the shortest path from START to END using the calling thread's
+     * workspaces. Note that timeout passed in is in seconds.
+     */
+    public CHSolver(ContractionHierarchy ch, long start, long end, double timeout) {
+        this(ch, start, end, timeout, FORWARD_WORKSPACES.get(), BACKWARD_WORKSPACES.get());
+    }
+
+    public CHSolver(ContractionHierarchy ch, long start, long end, double timeout,
+                    SearchWorkspace forward, SearchWorkspace backward) {
+        Stopwatch sw = new Stopwatch();
+        this.ch = ch;
+        IntAStarGraph graph = ch.graph();
+        int s = graph.indexOf(start);
+        int t = graph.indexOf(end);
+        if (s < 0 || t < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+            explorationTime = sw.elapsedTime();
+            return;
+        }
+
+        forward.reset(ch.numVertices());
+        backward.reset(ch.numVertices());
+        forward.relax(s, 0.0, -1);
+        forward.fringe().add(s, 0.0);
+        backward.relax(t, 0.0, -1);
+        backward.fringe().add(t, 0.0);
+        if (s == t) {
+            best = 0.0;
+            meet = s;
+        }
+
+        // Each side is done once nothing left on its fringe can improve the best path.
+        boolean forwardDone = false;
+        boolean backwardDone = false;
+        while (!forwardDone || !backwardDone) {
+            forwardDone = forwardDone || isDone(forward.fringe());
+            backwardDone = backwardDone || isDone(backward.fringe());
+            if (!forwardDone) {
+                expand(forward, backward, true);
+                numStatesExplored += 1;
+            }
+            if (!backwardDone) {
+                expand(backward, forward, false);
+                numStatesExplored += 1;
+            }
+
+            // Check time spent, if exceeds the timeout, return.
+            explorationTime = sw.elapsedTime();
+            if (explorationTime > timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+        }
+
+        if (meet < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            outcome = SolverOutcome.SOLVED;
+            solutionWeight = best;
+            solution = unpackPath(s, forward, backward);
+        }
+        explorationTime = sw.elapsedTime();
+    }
+
+    private boolean isDone(IntHeapMinPQ pq) {
+        return pq.isEmpty() || pq.smallestPriority() >= best;
+    }
+
+    /** Settles one vertex of SIDE. Up edges when UPWARD, otherwise down edges in reverse. */
+    private void expand(SearchWorkspace side, SearchWorkspace other, boolean upward) {
+        IntHeapMinPQ pq = side.fringe();
+        int v = pq.removeSmallest();
+        double distV = side.distTo(v);
+        int begin = upward ? ch.upBegin(v) : ch.downBegin(v);
+        int end = upward ? ch.upEnd(v) : ch.downEnd(v);
+        for (int i = begin; i < end; i += 1) {
+            int e = upward ? ch.upEdge(i) : ch.downEdge(i);
+            int w = upward ? ch.edgeTo(e) : ch.edgeFrom(e);
+            double distW = distV + ch.edgeWeight(e);
+            if (distW < side.distTo(w)) {
+                side.relax(w, distW, e);
+                if (pq.contains(w)) {
+                    pq.changePriority(w, distW);
+                } else {
+                    pq.add(w, distW);
+                }
+                double through = distW + other.distTo(w);
+                if (through < best) {
+                    best = through;
+                    meet = w;
+                }
+            }
+        }
+    }
+
+    private List<Long> unpackPath(int s, SearchWorkspace forward, SearchWorkspace backward) {
+        // Hierarchy edges from the start up to the meeting vertex, in travel order.
+        List<Integer> upEdges = new ArrayList<>();
+        for (int v = meet; forward.edgeTo(v) >= 0; v = ch.edgeFrom(forward.edgeTo(v))) {
+            upEdges.add(forward.edgeTo(v));
+        }
+        List<Long> path = new ArrayList<>();
+        path.add(ch.graph().idOf(s));
+        for (int i = upEdges.size() - 1; i >= 0; i -= 1) {
+            ch.unpack(upEdges.get(i), path);
+        }
+        // Then from the meeting vertex down to the end.
+        for (int v = meet; backward.edgeTo(v) >= 0; v = ch.edgeTo(backward.edgeTo(v))) {
+            ch.unpack(backward.edgeTo(v), path);
+        }
+        return path;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
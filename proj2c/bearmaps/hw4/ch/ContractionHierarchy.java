@@ -0,0 +1,210 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.hw4.IntAStarGraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result of contracting an IntAStarGraph: a rank for every vertex plus
+ * the original edges and shortcut edges, each stored once at its
+ * lower-ranked endpoint. A shortcut remembers the two edges it replaces, so
+ * a path found in the hierarchy can be unpacked back into original vertices.
+ *
+ * Edge e runs from edgeFrom(e) to edgeTo(e). The "up" edges of v are the
+ * edges leaving v towards a higher-ranked vertex; the "down" edges of v are
+ * the edges entering v from a higher-ranked vertex, which a backward search
+ * walks in reverse.
+ */
+public class ContractionHierarchy {
+    private static final int MAGIC = 0x43484231; // "CHB1"
+    private static final int VERSION = 1;
+
+    private final IntAStarGraph graph;
+    private final int[] rank;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final double[] edgeWeight;
+    private final int[] firstChild;
+    private final int[] secondChild;
+
+    private final int[] upStart;
+    private final int[] upEdges;
+    private final int[] downStart;
+    private final int[] downEdges;
+
+    ContractionHierarchy(IntAStarGraph graph, int[] rank, int numEdges, int[] edgeFrom,
+                         int[] edgeTo, double[] edgeWeight, int[] firstChild, int[] secondChild) {
+        this.graph = graph;
+        this.rank = rank;
+        this.edgeFrom = Arrays.copyOf(edgeFrom, numEdges);
+        this.edgeTo = Arrays.copyOf(edgeTo, numEdges);
+        this.edgeWeight = Arrays.copyOf(edgeWeight, numEdges);
+        this.firstChild = Arrays.copyOf(firstChild, numEdges);
+        this.secondChild = Arrays.copyOf(secondChild, numEdges);
+
+        int n = rank.length;
+        upStart = new int[n + 1];
+        downStart = new int[n + 1];
+        for (int e = 0; e < numEdges; e += 1) {
+            if (isUpward(e)) {
+                upStart[this.edgeFrom[e] + 1] += 1;
+            } else {
+                downStart[this.edgeTo[e] + 1] += 1;
+            }
+        }
+        for (int v = 0; v < n; v += 1) {
+            upStart[v + 1] += upStart[v];
+            downStart[v + 1] += downStart[v];
+        }
+        upEdges = new int[upStart[n]];
+        downEdges = new int[downStart[n]];
+        int[] nextUp = Arrays.copyOf(upStart, n);
+        int[] nextDown = Arrays.copyOf(downStart, n);
+        for (int e = 0; e < numEdges; e += 1) {
+            if (isUpward(e)) {
+                upEdges[nextUp[this.edgeFrom[e]]++] = e;
+            } else {
+                downEdges[nextDown[this.edgeTo[e]]++] = e;
+            }
+        }
+    }
+
+    private boolean isUpward(int e) {
+        return rank[edgeFrom[e]] < rank[edgeTo[e]];
+    }
+
+    /** Returns the graph this hierarchy was built from. */
+    public IntAStarGraph graph() {
+        return graph;
+    }
+
+    public int numVertices() {
+        return rank.length;
+    }
+
+    public int numEdges() {
+        return edgeFrom.length;
+    }
+
+    public int rank(int v) {
+        return rank[v];
+    }
+
+    int upBegin(int v) {
+        return upStart[v];
+    }
+
+    int upEnd(int v) {
+        return upStart[v + 1];
+    }
+
+    int upEdge(int i) {
+        return upEdges[i];
+    }
+
+    int downBegin(int v) {
+        return downStart[v];
+    }
+
+    int downEnd(int v) {
+        return downStart[v + 1];
+    }
+
+    int downEdge(int i) {
+        return downEdges[i];
+    }
+
+    int edgeFrom(int e) {
+        return edgeFrom[e];
+    }
+
+    int edgeTo(int e) {
+        return edgeTo[e];
+    }
+
+    double edgeWeight(int e) {
+        return edgeWeight[e];
+    }
+
+    /**
+     * Appends the ids of the original vertices that edge E passes through to
+     * PATH, not including edgeFrom(e) itself.
+     */
+    void unpack(int e, List<Long> path) {
+        if (firstChild[e] < 0) {
+            path.add(graph.idOf(edgeTo[e]));
+        } else {
+            unpack(firstChild[e], path);
+            unpack(secondChild[e], path);
+        }
+    }
+
+    /**
+     * Writes this hierarchy to FILENAME. The file records a fingerprint of
+     * the graph so that load can refuse to pair it with a different graph.
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(IntAStarGraph.fingerprint(graph));
+            out.writeInt(rank.length);
+            for (int r : rank) {
+                out.writeInt(r);
+            }
+            out.writeInt(edgeFrom.length);
+            for (int e = 0; e < edgeFrom.length; e += 1) {
+                out.writeInt(edgeFrom[e]);
+                out.writeInt(edgeTo[e]);
+                out.writeDouble(edgeWeight[e]);
+                out.writeInt(firstChild[e]);
+                out.writeInt(secondChild[e]);
+            }
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by save. Throws an IOException if the file
+     * is not a hierarchy or was built from a different graph than GRAPH.
+     */
+    public static ContractionHierarchy load(String filename, IntAStarGraph graph)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(filename + " is not a contraction hierarchy file.");
+            }
+            if (in.readLong() != IntAStarGraph.fingerprint(graph)) {
+                throw new IOException(filename + " was built from a different graph.");
+            }
+            int n = in.readInt();
+            int[] rank = new int[n];
+            for (int v = 0; v < n; v += 1) {
+                rank[v] = in.readInt();
+            }
+            int m = in.readInt();
+            int[] from = new int[m];
+            int[] to = new int[m];
+            double[] weight = new double[m];
+            int[] first = new int[m];
+            int[] second = new int[m];
+            for (int e = 0; e < m; e += 1) {
+                from[e] = in.readInt();
+                to[e] = in.readInt();
+                weight[e] = in.readDouble();
+                first[e] = in.readInt();
+                second[e] = in.readInt();
+            }
+            return new ContractionHierarchy(graph, rank, m, from, to, weight, first, second);
+        }
+    }
+}
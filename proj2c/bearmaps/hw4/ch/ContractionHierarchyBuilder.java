@@ -0,0 +1,279 @@
+package bearmaps.hw4.ch;
+
+import bearmaps.hw4.IntAStarGraph;
+import bearmaps.hw4.SearchWorkspace;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.proj2ab.IntHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Contracts the vertices of an IntAStarGraph one at a time, cheapest first,
+ * and adds a shortcut u -> w whenever removing v would otherwise lengthen
+ * the shortest u -> w path. The order is picked lazily: the cheapest-looking
+ * vertex has its priority recomputed before it is contracted, and goes back
+ * in the queue if it is no longer the cheapest.
+ *
+ * Run main to build a hierarchy for an OSM file and write it to disk:
+ * java bearmaps.hw4.ch.ContractionHierarchyBuilder berkeley-2019.osm.xml berkeley-2019.ch
+ */
+public class ContractionHierarchyBuilder {
+    /**
+     * Witness searches give up after settling this many vertices. Estimating
+     * a priority uses a cheaper search than the real contraction; a search
+     * that gives up too early only costs an unneeded shortcut.
+     */
+    private static final int SIMULATED_SETTLE_LIMIT = 50;
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final int n;
+    private final IntAStarGraph graph;
+
+    // Every edge, original or shortcut, lives in these parallel arrays.
+    private int numEdges;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private double[] edgeWeight;
+    private int[] firstChild;
+    private int[] secondChild;
+
+    // Edge ids leaving and entering each vertex.
+    private final int[][] out;
+    private final int[] outSize;
+    private final int[][] in;
+    private final int[] inSize;
+
+    private final boolean[] contracted;
+    private final int[] deletedNeighbors;
+    private final int[] rank;
+    private final SearchWorkspace witness = new SearchWorkspace();
+
+    public ContractionHierarchyBuilder(IntAStarGraph graph) {
+        this.graph = graph;
+        n = graph.numVertices();
+        int m = n == 0 ? 0 : graph.edgeEnd(n - 1);
+        edgeFrom = new int[m];
+        edgeTo = new int[m];
+        edgeWeight = new double[m];
+        firstChild = new int[m];
+        secondChild = new int[m];
+        out = new int[n][];
+        outSize = new int[n];
+        in = new int[n][];
+        inSize = new int[n];
+        for (int v = 0; v < n; v += 1) {
+            out[v] = new int[graph.edgeEnd(v) - graph.edgeBegin(v)];
+            in[v] = new int[graph.inEdgeEnd(v) - graph.inEdgeBegin(v)];
+        }
+        contracted = new boolean[n];
+        deletedNeighbors = new int[n];
+        rank = new int[n];
+
+        // Parallel edges are collapsed to the lightest one.
+        for (int v = 0; v < n; v += 1) {
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e += 1) {
+                int w = graph.edgeTarget(e);
+                if (w != v) {
+                    addOrImproveEdge(v, w, graph.edgeWeight(e), -1, -1);
+                }
+            }
+        }
+    }
+
+    /** Contracts every vertex and returns the resulting hierarchy. */
+    public ContractionHierarchy build() {
+        IntHeapMinPQ pq = new IntHeapMinPQ(n);
+        for (int v = 0; v < n; v += 1) {
+            pq.add(v, priority(v));
+        }
+
+        int order = 0;
+        while (!pq.isEmpty()) {
+            int v = pq.removeSmallest();
+            double p = priority(v);
+            if (!pq.isEmpty() && p > pq.smallestPriority()) {
+                pq.add(v, p);
+                continue;
+            }
+            contract(v, false);
+            contracted[v] = true;
+            rank[v] = order;
+            order += 1;
+            for (int i = 0; i < outSize[v]; i += 1) {
+                touchNeighbor(edgeTo[out[v][i]], pq);
+            }
+            for (int i = 0; i < inSize[v]; i += 1) {
+                touchNeighbor(edgeFrom[in[v][i]], pq);
+            }
+        }
+        return new ContractionHierarchy(graph, rank, numEdges, edgeFrom, edgeTo, edgeWeight,
+                firstChild, secondChild);
+    }
+
+    /** Contracting V changes the priority of its neighbors the most, so refresh them. */
+    private void touchNeighbor(int neighbor, IntHeapMinPQ pq) {
+        if (!contracted[neighbor]) {
+            deletedNeighbors[neighbor] += 1;
+            pq.changePriority(neighbor, priority(neighbor));
+        }
+    }
+
+    /**
+     * Twice the edge difference (shortcuts added minus edges removed) plus
+     * the number of neighbors already contracted, which spreads contraction
+     * evenly over the graph instead of eating one region first.
+     */
+    private double priority(int v) {
+        int shortcuts = contract(v, true);
+        int removed = 0;
+        for (int i = 0; i < outSize[v]; i += 1) {
+            removed += contracted[edgeTo[out[v][i]]] ? 0 : 1;
+        }
+        for (int i = 0; i < inSize[v]; i += 1) {
+            removed += contracted[edgeFrom[in[v][i]]] ? 0 : 1;
+        }
+        return 2 * (shortcuts - removed) + deletedNeighbors[v];
+    }
+
+    /**
+     * Counts the shortcuts contracting V needs, and adds them unless SIMULATE
+     * is set. A shortcut u -> v -> w is skipped if a witness path from u to
+     * w that avoids v is no longer.
+     */
+    private int contract(int v, boolean simulate) {
+        int shortcuts = 0;
+        for (int i = 0; i < inSize[v]; i += 1) {
+            int a = in[v][i];
+            int u = edgeFrom[a];
+            if (contracted[u]) {
+                continue;
+            }
+
+            double maxDist = -1;
+            for (int j = 0; j < outSize[v]; j += 1) {
+                int w = edgeTo[out[v][j]];
+                if (!contracted[w] && w != u) {
+                    maxDist = Math.max(maxDist, edgeWeight[a] + edgeWeight[out[v][j]]);
+                }
+            }
+            if (maxDist < 0) {
+                continue;
+            }
+            witnessSearch(u, v, maxDist, simulate ? SIMULATED_SETTLE_LIMIT : WITNESS_SETTLE_LIMIT);
+
+            for (int j = 0; j < outSize[v]; j += 1) {
+                int b = out[v][j];
+                int w = edgeTo[b];
+                if (contracted[w] || w == u) {
+                    continue;
+                }
+                double via = edgeWeight[a] + edgeWeight[b];
+                if (witness.distTo(w) <= via) {
+                    continue;
+                }
+                shortcuts += 1;
+                if (!simulate) {
+                    addOrImproveEdge(u, w, via, a, b);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /** Dijkstra from U over uncontracted vertices other than V, cut off at MAXDIST. */
+    private void witnessSearch(int u, int v, double maxDist, int settleLimit) {
+        witness.reset(n);
+        IntHeapMinPQ pq = witness.fringe();
+        witness.relax(u, 0.0, -1);
+        pq.add(u, 0.0);
+        int settled = 0;
+        while (!pq.isEmpty() && pq.smallestPriority() <= maxDist
+                && settled < settleLimit) {
+            int x = pq.removeSmallest();
+            settled += 1;
+            double distToX = witness.distTo(x);
+            for (int i = 0; i < outSize[x]; i += 1) {
+                int e = out[x][i];
+                int y = edgeTo[e];
+                if (contracted[y] || y == v) {
+                    continue;
+                }
+                double distToY = distToX + edgeWeight[e];
+                if (distToY < witness.distTo(y)) {
+                    witness.relax(y, distToY, x);
+                    if (pq.contains(y)) {
+                        pq.changePriority(y, distToY);
+                    } else {
+                        pq.add(y, distToY);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the edge FROM -> TO, or lowers the weight of the existing one. Only
+     * edges between uncontracted vertices are ever changed, and no shortcut
+     * has such an edge as a child, so changing one in place is safe.
+     */
+    private void addOrImproveEdge(int from, int to, double weight, int first, int second) {
+        for (int i = 0; i < outSize[from]; i += 1) {
+            int e = out[from][i];
+            if (edgeTo[e] == to) {
+                if (weight < edgeWeight[e]) {
+                    edgeWeight[e] = weight;
+                    firstChild[e] = first;
+                    secondChild[e] = second;
+                }
+                return;
+            }
+        }
+
+        if (numEdges == edgeFrom.length) {
+            int capacity = Math.max(16, numEdges * 2);
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            secondChild = Arrays.copyOf(secondChild, capacity);
+        }
+        int e = numEdges;
+        numEdges += 1;
+        edgeFrom[e] = from;
+        edgeTo[e] = to;
+        edgeWeight[e] = weight;
+        firstChild[e] = first;
+        secondChild[e] = second;
+
+        if (outSize[from] == out[from].length) {
+            out[from] = Arrays.copyOf(out[from], Math.max(4, outSize[from] * 2));
+        }
+        out[from][outSize[from]++] = e;
+        if (inSize[to] == in[to].length) {
+            in[to] = Arrays.copyOf(in[to], Math.max(4, inSize[to] * 2));
+        }
+        in[to][inSize[to]++] = e;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: ContractionHierarchyBuilder <osm xml file> <output file>");
+            return;
+        }
+        Stopwatch sw = new Stopwatch();
+        CompactStreetMapGraph graph = new CompactStreetMapGraph(new StreetMapGraph(args[0]));
+        System.out.println("Read " + graph.numVertices() + " vertices and " + graph.numEdges()
+                + " edges in " + sw.elapsedTime() + " seconds.");
+
+        sw = new Stopwatch();
+        ContractionHierarchy ch = new ContractionHierarchyBuilder(graph).build();
+        System.out.println("Contracted into " + ch.numEdges() + " edges in "
+                + sw.elapsedTime() + " seconds.");
+
+        ch.save(args[1]);
+        System.out.println("Wrote " + args[1]);
+    }
+}
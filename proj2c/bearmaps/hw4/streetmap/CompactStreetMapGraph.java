@@ -0,0 +1,219 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.IntAStarGraph;
+import bearmaps.hw4.WeightedEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, array-backed copy of a StreetMapGraph. OSM ids are remapped to
+ * dense vertex indices (in increasing id order), coordinates are kept in
+ * parallel columns and adjacency is stored in compressed sparse row form:
+ * the edges leaving vertex v are edgeBegin(v) .. edgeEnd(v) - 1. The same
+ * edges are indexed a second time by target vertex for backward searches.
+ */
+public class CompactStreetMapGraph implements AStarGraph<Long>, IntAStarGraph {
+    private final long[] ids;
+    private final double[] lons;
+    private final double[] lats;
+    private final String[] names;
+
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final double[] edgeWeight;
+    private final int[] edgeWayName;
+    private final String[] wayNames;
+
+    private final int[] inEdgeStart;
+    private final int[] inEdgeSource;
+    private final double[] inEdgeWeight;
+
+    public CompactStreetMapGraph(StreetMapGraph g) {
+        List<Node> nodes = g.getNodes();
+        int n = nodes.size();
+
+        ids = new long[n];
+        for (int i = 0; i < n; i += 1) {
+            ids[i] = nodes.get(i).id();
+        }
+        Arrays.sort(ids);
+
+        lons = new double[n];
+        lats = new double[n];
+        names = new String[n];
+        for (Node node : nodes) {
+            int v = indexOf(node.id());
+            lons[v] = node.lon();
+            lats[v] = node.lat();
+            names[v] = node.name();
+        }
+
+        // First pass counts the degree of every vertex, second pass fills the rows.
+        edgeStart = new int[n + 1];
+        List<List<WeightedEdge<Long>>> rows = new ArrayList<>(n);
+        for (int v = 0; v < n; v += 1) {
+            List<WeightedEdge<Long>> row = g.neighbors(ids[v]);
+            rows.add(row);
+            edgeStart[v + 1] = edgeStart[v] + row.size();
+        }
+
+        int m = edgeStart[n];
+        edgeTarget = new int[m];
+        edgeWeight = new double[m];
+        edgeWayName = new int[m];
+        Map<String, Integer> wayNameIndex = new HashMap<>();
+        List<String> wayNameList = new ArrayList<>();
+        for (int v = 0; v < n; v += 1) {
+            int e = edgeStart[v];
+            for (WeightedEdge<Long> edge : rows.get(v)) {
+                edgeTarget[e] = indexOf(edge.to());
+                edgeWeight[e] = edge.weight();
+                String name = edge.getName();
+                if (name == null) {
+                    edgeWayName[e] = -1;
+                } else {
+                    Integer nameIndex = wayNameIndex.get(name);
+                    if (nameIndex == null) {
+                        nameIndex = wayNameList.size();
+                        wayNameIndex.put(name, nameIndex);
+                        wayNameList.add(name);
+                    }
+                    edgeWayName[e] = nameIndex;
+                }
+                e += 1;
+            }
+        }
+        wayNames = wayNameList.toArray(new String[0]);
+
+        // Transpose the rows: count in-degrees, prefix sum, then scatter.
+        inEdgeStart = new int[n + 1];
+        for (int e = 0; e < m; e += 1) {
+            inEdgeStart[edgeTarget[e] + 1] += 1;
+        }
+        for (int v = 0; v < n; v += 1) {
+            inEdgeStart[v + 1] += inEdgeStart[v];
+        }
+        inEdgeSource = new int[m];
+        inEdgeWeight = new double[m];
+        int[] next = Arrays.copyOf(inEdgeStart, n);
+        for (int v = 0; v < n; v += 1) {
+            for (int e = edgeStart[v]; e < edgeStart[v + 1]; e += 1) {
+                int slot = next[edgeTarget[e]]++;
+                inEdgeSource[slot] = v;
+                inEdgeWeight[slot] = edgeWeight[e];
+            }
+        }
+    }
+
+    @Override
+    public int numVertices() {
+        return ids.length;
+    }
+
+    public int numEdges() {
+        return edgeTarget.length;
+    }
+
+    @Override
+    public int indexOf(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    public long idOf(int v) {
+        return ids[v];
+    }
+
+    @Override
+    public int edgeBegin(int v) {
+        return edgeStart[v];
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return edgeStart[v + 1];
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return edgeTarget[e];
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return edgeWeight[e];
+    }
+
+    @Override
+    public int inEdgeBegin(int v) {
+        return inEdgeStart[v];
+    }
+
+    @Override
+    public int inEdgeEnd(int v) {
+        return inEdgeStart[v + 1];
+    }
+
+    @Override
+    public int inEdgeSource(int e) {
+        return inEdgeSource[e];
+    }
+
+    @Override
+    public double inEdgeWeight(int e) {
+        return inEdgeWeight[e];
+    }
+
+    /** Returns the name of the way edge E lies on, or null if it has none. */
+    public String edgeName(int e) {
+        int nameIndex = edgeWayName[e];
+        return nameIndex < 0 ? null : wayNames[nameIndex];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    public String name(int v) {
+        return names[v];
+    }
+
+    /**
+     * Returns the great-circle distance between vertices S and GOAL.
+     */
+    @Override
+    public double estimatedDistanceToGoal(int s, int goal) {
+        return StreetMapGraph.distance(lons[s], lons[goal], lats[s], lats[goal]);
+    }
+
+    /**
+     * Boxed view of the outgoing edges of V, for callers that only speak
+     * AStarGraph. Prefer the edgeBegin/edgeEnd loop on hot paths.
+     */
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        int from = indexOf(v);
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(edgeEnd(from) - edgeBegin(from));
+        for (int e = edgeBegin(from); e < edgeEnd(from); e += 1) {
+            WeightedEdge<Long> edge = new WeightedEdge<>(v, ids[edgeTarget[e]], edgeWeight[e]);
+            edge.setName(edgeName(e));
+            incidentList.add(edge);
+        }
+        return incidentList;
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimatedDistanceToGoal(indexOf(s), indexOf(goal));
+    }
+}
@@ -101,22 +101,41 @@ public class GraphBuildingHandler extends DefaultHandler {
         if (qName.equals("way")) {
             /* We are done looking at a way. (We finished looking at the nodes, speeds, etc...)*/
             if (validWay) {
-                for (int i = 0; i < nodePath.size() - 1; i++) {
-                    long fromID = nodePath.get(i);
-                    long toID = nodePath.get(i + 1);
-                    g.addWeightedEdge(fromID, toID, wayName);
-                    g.addWeightedEdge(toID, fromID, wayName);
-                }
+                handleWay(nodePath, wayName);
             }
             clearStates();
         } else if (qName.equals("node")) {
             if (activeNode != null) {
-                g.addNode(activeNode);
+                handleNode(activeNode);
             }
             clearStates();
         }
     }
 
+    /**
+     * Called once for every complete node, in file order. Adds it to the graph.
+     * @param node The node, with its name set if it has one.
+     */
+    protected void handleNode(Node node) {
+        g.addNode(node);
+    }
+
+    /**
+     * Called once for every way with an allowed highway type, in file order.
+     * Adds an edge in both directions between each pair of consecutive nodes.
+     * @param path The ids of the nodes along the way. The handler never
+     *             touches this list again, so it may be kept.
+     * @param name The name of the way, or the empty string if it has none.
+     */
+    protected void handleWay(List<Long> path, String name) {
+        for (int i = 0; i < path.size() - 1; i++) {
+            long fromID = path.get(i);
+            long toID = path.get(i + 1);
+            g.addWeightedEdge(fromID, toID, name);
+            g.addWeightedEdge(toID, fromID, name);
+        }
+    }
+
     private void clearStates() {
         activeState = "";
         activeNode = null;
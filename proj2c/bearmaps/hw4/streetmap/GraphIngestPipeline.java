@@ -0,0 +1,336 @@
+package bearmaps.hw4.streetmap;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds a StreetMapGraph from OSM XML with the work spread over several
+ * threads. The SAX parser runs on the calling thread and only batches up
+ * node and way records into bounded queues; the rest happens on workers.
+ *
+ * Every node id is owned by one worker, picked by hashing the id. Nodes go
+ * to the queue of their owner, which keeps them in its own shard. Once the
+ * parser reaches the first way (OSM files list all nodes before any way),
+ * the workers switch to taking ways from a shared queue: they look up the
+ * coordinates of consecutive nodes in the shards, compute edge weights, and
+ * file each edge with the owner of its source node. Finally the nodes are
+ * added to the graph, and each worker adds the edges it owns, so no two
+ * threads ever touch the same adjacency set.
+ *
+ * The resulting graph is equal to the one GraphBuildingHandler builds on a
+ * single thread, down to the edge weights.
+ *
+ * If a worker fails, nothing drains its queue any more, so the parser and
+ * the other workers would wait on it forever. Instead every wait gives up
+ * after POLL_MILLIS to check for a failure, and the first failure ends the
+ * parse with an IOException caused by it.
+ */
+public class GraphIngestPipeline {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long POLL_MILLIS = 100;
+    private static final List<Object> END = Collections.emptyList();
+
+    private final StreetMapGraph g;
+    private final int numWorkers;
+
+    private final List<BlockingQueue<List<Object>>> nodeQueues = new ArrayList<>();
+    private final BlockingQueue<List<Object>> wayQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final CountDownLatch nodesLoaded;
+
+    private final List<Map<Long, Node>> shards = new ArrayList<>();
+    // edges[w][owner] holds the edges worker w resolved whose source belongs to owner.
+    private final EdgeBuffer[][] edges;
+    // Nodes that appear after the first way. Valid OSM has none; any that do
+    // show up are kept, but without edges.
+    private final List<Node> lateNodes = new ArrayList<>();
+    // The first exception thrown by a worker, if any.
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /** Prepares to fill G using NUMWORKERS worker threads. */
+    public GraphIngestPipeline(StreetMapGraph g, int numWorkers) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Need at least one worker.");
+        }
+        this.g = g;
+        this.numWorkers = numWorkers;
+        nodesLoaded = new CountDownLatch(numWorkers);
+        edges = new EdgeBuffer[numWorkers][numWorkers];
+        for (int w = 0; w < numWorkers; w += 1) {
+            nodeQueues.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+            shards.add(new HashMap<>());
+            for (int owner = 0; owner < numWorkers; owner += 1) {
+                edges[w][owner] = new EdgeBuffer();
+            }
+        }
+    }
+
+    /** Parses the OSM XML from IN into the graph. */
+    public void parse(InputStream in)
+            throws IOException, SAXException, ParserConfigurationException {
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int w = 0; w < numWorkers; w += 1) {
+                int worker = w;
+                workers.add(pool.submit(() -> {
+                    try {
+                        resolve(worker);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        throw t;
+                    }
+                    return null;
+                }));
+            }
+            try {
+                SAXParserFactory.newInstance().newSAXParser().parse(in, new Emitter());
+            } catch (WorkerFailedException e) {
+                checkFailure();
+            }
+            await(workers);
+
+            for (Map<Long, Node> shard : shards) {
+                for (Node node : shard.values()) {
+                    g.addNode(node);
+                }
+            }
+            for (Node node : lateNodes) {
+                g.addNode(node);
+            }
+
+            List<Future<?>> mergers = new ArrayList<>();
+            for (int w = 0; w < numWorkers; w += 1) {
+                int owner = w;
+                mergers.add(pool.submit(() -> {
+                    merge(owner);
+                    return null;
+                }));
+            }
+            await(mergers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the graph.", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Waits for FUTURES, failing as soon as any worker has failed. */
+    private void await(List<Future<?>> futures) throws InterruptedException, IOException {
+        for (Future<?> f : futures) {
+            while (true) {
+                checkFailure();
+                try {
+                    f.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // A worker may be waiting on another one that failed; look again.
+                } catch (ExecutionException e) {
+                    throw new IOException("Graph ingest worker failed.", e.getCause());
+                }
+            }
+        }
+    }
+
+    /** Throws the first worker failure, if there has been one. */
+    private void checkFailure() throws IOException {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new IOException("Graph ingest worker failed.", t);
+        }
+    }
+
+    private int owner(long id) {
+        return Math.floorMod(Long.hashCode(id) * 0x9E3779B9, numWorkers);
+    }
+
+    /** The work of worker W before the merge: load its nodes, then resolve ways. */
+    private void resolve(int w) throws InterruptedException {
+        Map<Long, Node> shard = shards.get(w);
+        BlockingQueue<List<Object>> queue = nodeQueues.get(w);
+        for (List<Object> batch = queue.take(); batch != END; batch = queue.take()) {
+            beforeBatch(w, batch.size());
+            for (Object o : batch) {
+                Node node = (Node) o;
+                shard.putIfAbsent(node.id(), node);
+            }
+        }
+        // Ways may use nodes from any shard, so wait until every shard is complete.
+        nodesLoaded.countDown();
+        nodesLoaded.await();
+
+        EdgeBuffer[] out = edges[w];
+        for (List<Object> batch = wayQueue.take(); batch != END; batch = wayQueue.take()) {
+            beforeBatch(w, batch.size());
+            for (Object o : batch) {
+                Way way = (Way) o;
+                for (int i = 0; i < way.path.size() - 1; i++) {
+                    Node from = node(way.path.get(i));
+                    Node to = node(way.path.get(i + 1));
+                    if (from != null && to != null) {
+                        // Haversine is not exactly symmetric in floating point, so
+                        // each direction gets its own weight, as in GraphBuildingHandler.
+                        out[owner(from.id())].add(from.id(), to.id(), StreetMapGraph.distance(
+                                from.lon(), to.lon(), from.lat(), to.lat()), way.name);
+                        out[owner(to.id())].add(to.id(), from.id(), StreetMapGraph.distance(
+                                to.lon(), from.lon(), to.lat(), from.lat()), way.name);
+                    }
+                }
+            }
+        }
+        // Let the other workers see the end as well.
+        wayQueue.put(END);
+    }
+
+    /**
+     * Runs on worker W before it handles each batch of SIZE node or way
+     * records. Does nothing here; a subclass can watch the workers' progress,
+     * or fail one by throwing.
+     */
+    protected void beforeBatch(int w, int size) {
+    }
+
+    private Node node(long id) {
+        return shards.get(owner(id)).get(id);
+    }
+
+    /** Adds every edge whose source belongs to OWNER. */
+    private void merge(int owner) {
+        for (int w = 0; w < numWorkers; w += 1) {
+            EdgeBuffer buffer = edges[w][owner];
+            for (int i = 0; i < buffer.size; i += 1) {
+                g.addWeightedEdge(buffer.from[i], buffer.to[i], buffer.weight[i], buffer.name[i]);
+            }
+        }
+    }
+
+    private static class Way {
+        private final List<Long> path;
+        private final String name;
+
+        Way(List<Long> path, String name) {
+            this.path = path;
+            this.name = name;
+        }
+    }
+
+    /** Growable parallel arrays of edges. */
+    private static class EdgeBuffer {
+        private long[] from = new long[16];
+        private long[] to = new long[16];
+        private double[] weight = new double[16];
+        private String[] name = new String[16];
+        private int size;
+
+        void add(long fromID, long toID, double w, String wayName) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+                name = Arrays.copyOf(name, size * 2);
+            }
+            from[size] = fromID;
+            to[size] = toID;
+            weight[size] = w;
+            name[size] = wayName;
+            size += 1;
+        }
+    }
+
+    /** Thrown through the SAX parser to stop it once a worker has failed. */
+    private static class WorkerFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Runs on the parser thread and only batches records up for the workers. */
+    private class Emitter extends GraphBuildingHandler {
+        private final List<List<Object>> nodeBatches = new ArrayList<>();
+        private List<Object> wayBatch = new ArrayList<>(BATCH_SIZE);
+        private boolean nodesDone = false;
+
+        Emitter() {
+            super(g);
+            for (int w = 0; w < numWorkers; w += 1) {
+                nodeBatches.add(new ArrayList<>(BATCH_SIZE));
+            }
+        }
+
+        @Override
+        protected void handleNode(Node node) {
+            if (nodesDone) {
+                lateNodes.add(node);
+                return;
+            }
+            int w = owner(node.id());
+            List<Object> batch = nodeBatches.get(w);
+            batch.add(node);
+            if (batch.size() == BATCH_SIZE) {
+                put(nodeQueues.get(w), batch);
+                nodeBatches.set(w, new ArrayList<>(BATCH_SIZE));
+            }
+        }
+
+        @Override
+        protected void handleWay(List<Long> path, String name) {
+            finishNodes();
+            wayBatch.add(new Way(path, name));
+            if (wayBatch.size() == BATCH_SIZE) {
+                put(wayQueue, wayBatch);
+                wayBatch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        @Override
+        public void endDocument() {
+            finishNodes();
+            put(wayQueue, wayBatch);
+            put(wayQueue, END);
+        }
+
+        private void finishNodes() {
+            if (nodesDone) {
+                return;
+            }
+            nodesDone = true;
+            for (int w = 0; w < numWorkers; w += 1) {
+                put(nodeQueues.get(w), nodeBatches.get(w));
+                put(nodeQueues.get(w), END);
+            }
+        }
+
+        /** Queues BATCH, aborting the parse if a worker fails while the queue is full. */
+        private void put(BlockingQueue<List<Object>> queue, List<Object> batch) {
+            try {
+                while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null) {
+                        throw new WorkerFailedException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing.", e);
+            }
+        }
+    }
+}
@@ -7,12 +7,19 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class StreetMapGraph implements AStarGraph<Long> {
+    /** Leave one core to the XML parser, but always use at least one worker. */
+    private static final int INGEST_WORKERS =
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
     private Map<Long, Node> nodes = new HashMap<>();
     private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
 
@@ -20,11 +27,54 @@ public class StreetMapGraph implements AStarGraph<Long> {
     }
 
     public StreetMapGraph(String filename) {
-        StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
+        this(filename, INGEST_WORKERS);
+    }
+
+    /**
+     * Reads the graph from FILENAME, handing all work except XML parsing to
+     * NUMWORKERS threads through a GraphIngestPipeline. With no workers the
+     * file is read on the calling thread alone.
+     */
+    public StreetMapGraph(String filename, int numWorkers) {
+        StreetMapGraph smg = StreetMapGraph.readFromXML(filename, numWorkers);
         this.nodes = smg.nodes;
         this.neighbors = smg.neighbors;
     }
 
+    /**
+     * Reads a graph written by writeSnapshot from SNAPSHOT, leaving its
+     * position just past the graph. The graph was cleaned before it was
+     * written, so it is not cleaned again.
+     */
+    protected StreetMapGraph(ByteBuffer snapshot) {
+        String[] strings = new String[snapshot.getInt()];
+        for (int i = 0; i < strings.length; i += 1) {
+            byte[] bytes = new byte[snapshot.getInt()];
+            snapshot.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long[] ids = new long[snapshot.getInt()];
+        for (int v = 0; v < ids.length; v += 1) {
+            ids[v] = snapshot.getLong();
+            Node node = Node.of(ids[v], snapshot.getDouble(), snapshot.getDouble());
+            int name = snapshot.getInt();
+            if (name >= 0) {
+                node.setName(strings[name]);
+            }
+            addNode(node);
+        }
+        for (int v = 0; v < ids.length; v += 1) {
+            int degree = snapshot.getInt();
+            for (int i = 0; i < degree; i += 1) {
+                int to = snapshot.getInt();
+                double weight = snapshot.getDouble();
+                int name = snapshot.getInt();
+                addWeightedEdge(ids[v], ids[to], weight, name < 0 ? null : strings[name]);
+            }
+        }
+    }
+
     /**
      * Returns a list of outgoing edges for V. Assumes V exists in this
      * graph.
@@ -68,15 +118,19 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * Factory method. Creates and returns a graph from an OSM XML
      * file. Assumes file is correctly formatted.
      */
-    private static StreetMapGraph readFromXML(String filename) {
+    private static StreetMapGraph readFromXML(String filename, int numWorkers) {
         StreetMapGraph smg = new StreetMapGraph();
         try {
             File inputFile = new File(filename);
             FileInputStream inputStream = new FileInputStream(inputFile);
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(smg);
-            saxParser.parse(inputStream, gbh);
+            if (numWorkers > 0) {
+                new GraphIngestPipeline(smg, numWorkers).parse(inputStream);
+            } else {
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                SAXParser saxParser = factory.newSAXParser();
+                GraphBuildingHandler gbh = new GraphBuildingHandler(smg);
+                saxParser.parse(inputStream, gbh);
+            }
         } catch (ParserConfigurationException | SAXException | IOException e) {
             e.printStackTrace();
         }
@@ -101,9 +155,15 @@ public class StreetMapGraph implements AStarGraph<Long> {
             Node from = nodes.get(fromID);
             Node to = nodes.get(toID);
             double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
+            addWeightedEdge(fromID, toID, weight, name);
+        }
+    }
 
+    /** Adds an edge with a known WEIGHT, if FROMID and TOID are in this graph. **/
+    void addWeightedEdge(long fromID, long toID, double weight, String name) {
+        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
             Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(from.id(), to.id(), weight);
+            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(fromID, toID, weight);
             weightedEdge.setName(name);
             edgeSet.add(weightedEdge);
         }
@@ -179,7 +239,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -227,6 +287,72 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return nodes.get(v).name();
     }
 
+    /**
+     * Writes this graph to OUT in the format read by StreetMapGraph(ByteBuffer):
+     * a table of every node and way name, the nodes in increasing id order
+     * (the same dense order as CompactStreetMapGraph), then the edges of each
+     * node, with targets and names given as indices into those tables.
+     */
+    protected void writeSnapshot(DataOutputStream out) throws IOException {
+        long[] ids = new long[nodes.size()];
+        int n = 0;
+        for (long id : nodes.keySet()) {
+            ids[n] = id;
+            n += 1;
+        }
+        Arrays.sort(ids);
+
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (long id : ids) {
+            internString(nodes.get(id).name(), stringIndex, strings);
+            for (WeightedEdge<Long> e : neighbors.get(id)) {
+                internString(e.getName(), stringIndex, strings);
+            }
+        }
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(n);
+        for (long id : ids) {
+            Node node = nodes.get(id);
+            out.writeLong(id);
+            out.writeDouble(node.lat());
+            out.writeDouble(node.lon());
+            out.writeInt(node.name() == null ? -1 : stringIndex.get(node.name()));
+        }
+        for (long id : ids) {
+            Set<WeightedEdge<Long>> edgeSet = neighbors.get(id);
+            out.writeInt(edgeSet.size());
+            for (WeightedEdge<Long> e : edgeSet) {
+                out.writeInt(Arrays.binarySearch(ids, e.to()));
+                out.writeDouble(e.weight());
+                out.writeInt(e.getName() == null ? -1 : stringIndex.get(e.getName()));
+            }
+        }
+    }
+
+    private static void internString(String s, Map<String, Integer> stringIndex,
+                                     List<String> strings) {
+        if (s != null && !stringIndex.containsKey(s)) {
+            stringIndex.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    /**
+     * Gets the node with the given id.
+     * @param v The id of the vertex.
+     * @return The node, or null if there is none.
+     */
+    protected Node node(long v) {
+        return nodes.get(v);
+    }
+
     protected List<Node> getNodes() {
         List<Node> nodes = new ArrayList<>();
         for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
@@ -0,0 +1,541 @@
+package bearmaps.lab9;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A TrieSet61B stored as a double-array trie: a few flat arrays instead of
+ * a TrieNode with its own HashMap per character.
+ *
+ * Every state s has a slot in the arrays. Characters are numbered 1, 2, ...
+ * in the order they are first seen, and the child of s on character code c
+ * sits at slot base[s] + c, which belongs to s only if check[base[s] + c]
+ * is s. So following an edge is one addition and one comparison. When a new
+ * child lands on a slot some other state already uses, the children of s
+ * move together to a base where all of them fit.
+ *
+ * To list the children of a state without trying every code, each state
+ * also keeps the code of its first child and of its next sibling, in
+ * character order. Codes do not change when children move, so these links
+ * survive relocation as they are. keysWithPrefix follows them with one
+ * StringBuilder it appends to and truncates, rather than concatenating a
+ * new String at every node, and returns the keys in sorted order.
+ *
+ * The free slots form a doubly linked list, threaded through the base and
+ * firstChild entries they do not otherwise use, so that finding room for
+ * a set of children only looks at slots that are actually free.
+ *
+ * Every key also has a weight, and every state the largest weight of any
+ * key in its subtree. topKeysWithPrefix uses these to pull the heaviest
+ * completions of a prefix out best-first, expanding only the subtrees that
+ * can still beat what it has already found.
+ *
+ * keysWithinDistance finds the keys within a given edit distance of a
+ * query by running the Levenshtein dynamic program down the trie, one row
+ * per character, so keys that share a prefix share its rows. A subtree is
+ * skipped as soon as no cell of its row is within the distance, since the
+ * row minimum never decreases further down.
+ */
+public class CompactTrieSet implements TrieSet61B {
+    private static final int ROOT = 0;
+    private static final int FREE = -1;
+    private static final int NONE = 0;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] base;
+    private int[] check;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private boolean[] isKey;
+    private double[] weight;
+    // The largest weight of a key at or below each state.
+    private double[] maxWeight;
+    // Any free slot, or -1 if every slot is in use. For a free slot t, base[t]
+    // and firstChild[t] are the next and previous free slots.
+    private int freeHead;
+    private int size;
+
+    // codes[c] is the code of character c, or 0 if c is not in any key.
+    private int[] codes;
+    // alphabet[code] is the character with that code.
+    private char[] alphabet;
+    private int alphabetSize;
+
+    public CompactTrieSet() {
+        clear();
+    }
+
+    /** Clears all items out of Trie */
+    @Override
+    public void clear() {
+        base = new int[INITIAL_CAPACITY];
+        check = new int[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        nextSibling = new int[INITIAL_CAPACITY];
+        isKey = new boolean[INITIAL_CAPACITY];
+        weight = new double[INITIAL_CAPACITY];
+        maxWeight = new double[INITIAL_CAPACITY];
+        check[ROOT] = ROOT;
+        maxWeight[ROOT] = Double.NEGATIVE_INFINITY;
+        freeHead = -1;
+        for (int t = INITIAL_CAPACITY - 1; t > ROOT; t -= 1) {
+            release(t);
+        }
+        size = 0;
+        codes = new int[128];
+        alphabet = new char[8];
+        alphabetSize = 0;
+    }
+
+    /** Returns the number of keys in the Trie. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the number of array slots, used or not, for measuring memory. */
+    public int capacity() {
+        return base.length;
+    }
+
+    /** Shrinks the arrays to the last slot in use, once no more keys will be added. */
+    public void trimToSize() {
+        int n = base.length;
+        while (n > 1 && check[n - 1] == FREE) {
+            n -= 1;
+            unlink(n);
+        }
+        resize(n);
+    }
+
+    /** Returns true if the Trie contains KEY, false otherwise */
+    @Override
+    public boolean contains(String key) {
+        if (key == null || key.length() == 0) {
+            return false;
+        }
+        int s = find(key);
+        return s >= 0 && isKey[s];
+    }
+
+    /** Inserts string KEY into Trie. A new key has weight 0. */
+    @Override
+    public void add(String key) {
+        if (key == null || key.length() == 0) {
+            return;
+        }
+        int s = insert(key);
+        if (!isKey[s]) {
+            isKey[s] = true;
+            size += 1;
+            setWeight(s, 0);
+        }
+    }
+
+    /** Inserts KEY with the given WEIGHT, replacing its weight if it is already there. */
+    public void add(String key, double weight) {
+        if (key == null || key.length() == 0) {
+            return;
+        }
+        int s = insert(key);
+        if (!isKey[s]) {
+            isKey[s] = true;
+            size += 1;
+        }
+        setWeight(s, weight);
+    }
+
+    /** Returns the weight of KEY, or negative infinity if it is not in the Trie. */
+    public double weight(String key) {
+        if (key == null || key.length() == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int s = find(key);
+        return s >= 0 && isKey[s] ? weight[s] : Double.NEGATIVE_INFINITY;
+    }
+
+    /** Returns the state for KEY, adding states for any of its characters that are missing. */
+    private int insert(String key) {
+        int s = ROOT;
+        for (int i = 0; i < key.length(); i += 1) {
+            int c = codeOrAdd(key.charAt(i));
+            int t = child(s, c);
+            s = t >= 0 ? t : insertChild(s, c);
+        }
+        return s;
+    }
+
+    /** Sets the weight of the key at S and fixes up the subtree maxima above it. */
+    private void setWeight(int s, double w) {
+        weight[s] = w;
+        for (int t = s; ; t = check[t]) {
+            double max = isKey[t] ? weight[t] : Double.NEGATIVE_INFINITY;
+            for (int c = firstChild[t]; c != NONE; c = nextSibling[base[t] + c]) {
+                max = Math.max(max, maxWeight[base[t] + c]);
+            }
+            if (max == maxWeight[t]) {
+                return;
+            }
+            maxWeight[t] = max;
+            if (t == ROOT) {
+                return;
+            }
+        }
+    }
+
+    /** Returns a list of all words that start with PREFIX */
+    @Override
+    public List<String> keysWithPrefix(String prefix) {
+        if (prefix == null || prefix.length() == 0) {
+            throw new IllegalArgumentException();
+        }
+        List<String> result = new ArrayList<>();
+        int s = find(prefix);
+        if (s >= 0) {
+            collect(s, new StringBuilder(prefix), result);
+        }
+        return result;
+    }
+
+    private void collect(int s, StringBuilder word, List<String> result) {
+        if (isKey[s]) {
+            result.add(word.toString());
+        }
+        int length = word.length();
+        for (int c = firstChild[s]; c != NONE; c = nextSibling[base[s] + c]) {
+            word.append(alphabet[c]);
+            collect(base[s] + c, word, result);
+            word.setLength(length);
+        }
+    }
+
+    /**
+     * Returns the K heaviest keys that start with PREFIX, heaviest first.
+     * An empty prefix matches every key.
+     */
+    public List<String> topKeysWithPrefix(String prefix, int k) {
+        if (prefix == null) {
+            throw new IllegalArgumentException();
+        }
+        List<String> result = new ArrayList<>();
+        int s = find(prefix);
+        if (s < 0 || k <= 0) {
+            return result;
+        }
+        // A state s on the queue stands for its subtree, with priority
+        // maxWeight[s]; ~s stands for the key at s alone, with weight[s].
+        // Keys come before subtrees of the same weight.
+        PriorityQueue<Integer> fringe = new PriorityQueue<>((a, b) -> {
+            int cmp = Double.compare(priority(b), priority(a));
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        fringe.add(s);
+        StringBuilder word = new StringBuilder();
+        while (!fringe.isEmpty() && result.size() < k) {
+            int t = fringe.poll();
+            if (t < 0) {
+                result.add(keyAt(~t, word));
+                continue;
+            }
+            if (isKey[t]) {
+                fringe.add(~t);
+            }
+            for (int c = firstChild[t]; c != NONE; c = nextSibling[base[t] + c]) {
+                fringe.add(base[t] + c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the keys within Levenshtein distance MAXDISTANCE of QUERY:
+     * closest first, and among keys at the same distance, heaviest first.
+     */
+    public List<String> keysWithinDistance(String query, int maxDistance) {
+        if (query == null) {
+            throw new IllegalArgumentException();
+        }
+        int n = query.length();
+        int[] queryCodes = new int[n];
+        for (int j = 0; j < n; j += 1) {
+            queryCodes[j] = code(query.charAt(j));
+        }
+        // rows.get(d) is the DP row for the trie state at depth d: entry j is
+        // the distance between the first j query characters and the key so far.
+        List<int[]> rows = new ArrayList<>();
+        int[] first = new int[n + 1];
+        for (int j = 0; j <= n; j += 1) {
+            first[j] = j;
+        }
+        rows.add(first);
+
+        List<int[]> matches = new ArrayList<>();
+        if (firstChild[ROOT] != NONE) {
+            search(ROOT, 0, queryCodes, maxDistance, rows, matches);
+        }
+
+        matches.sort((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1])
+                : Double.compare(weight[b[0]], weight[a[0]]));
+        List<String> result = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int[] match : matches) {
+            result.add(keyAt(match[0], word));
+        }
+        return result;
+    }
+
+    private void search(int s, int depth, int[] queryCodes, int maxDistance,
+                        List<int[]> rows, List<int[]> matches) {
+        int n = queryCodes.length;
+        if (rows.size() == depth + 1) {
+            rows.add(new int[n + 1]);
+        }
+        int[] prev = rows.get(depth);
+        int[] row = rows.get(depth + 1);
+        for (int c = firstChild[s]; c != NONE; c = nextSibling[base[s] + c]) {
+            int t = base[s] + c;
+            row[0] = depth + 1;
+            int min = row[0];
+            for (int j = 1; j <= n; j += 1) {
+                int substitute = prev[j - 1] + (queryCodes[j - 1] == c ? 0 : 1);
+                row[j] = Math.min(substitute, Math.min(prev[j], row[j - 1]) + 1);
+                min = Math.min(min, row[j]);
+            }
+            if (isKey[t] && row[n] <= maxDistance) {
+                matches.add(new int[] {t, row[n]});
+            }
+            if (min <= maxDistance && firstChild[t] != NONE) {
+                search(t, depth + 1, queryCodes, maxDistance, rows, matches);
+            }
+        }
+    }
+
+    private double priority(int entry) {
+        return entry < 0 ? weight[~entry] : maxWeight[entry];
+    }
+
+    /** Spells out the key at S by walking up to the root, using WORD as scratch space. */
+    private String keyAt(int s, StringBuilder word) {
+        word.setLength(0);
+        for (int t = s; t != ROOT; t = check[t]) {
+            word.append(alphabet[t - base[check[t]]]);
+        }
+        return word.reverse().toString();
+    }
+
+    /** Returns the longest prefix of KEY that exists in the Trie
+     * Not required for Lab 9. If you don't implement this, throw an
+     * UnsupportedOperationException.
+     */
+    @Override
+    public String longestPrefixOf(String key) {
+        int s = ROOT;
+        for (int i = 0; i < key.length(); i += 1) {
+            s = child(s, code(key.charAt(i)));
+            if (s < 0) {
+                return key.substring(0, i);
+            }
+        }
+        return key;
+    }
+
+    /** Returns the state reached by reading KEY from the root, or -1 if there is none. */
+    private int find(String key) {
+        int s = ROOT;
+        for (int i = 0; i < key.length() && s >= 0; i += 1) {
+            s = child(s, code(key.charAt(i)));
+        }
+        return s;
+    }
+
+    /** Returns the child of S on code C, or -1 if S has no such child. */
+    private int child(int s, int c) {
+        if (c == NONE || firstChild[s] == NONE) {
+            return -1;
+        }
+        int t = base[s] + c;
+        return t < check.length && check[t] == s ? t : -1;
+    }
+
+    private int code(char c) {
+        return c < codes.length ? codes[c] : NONE;
+    }
+
+    private int codeOrAdd(char c) {
+        if (c >= codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(c + 1, codes.length * 2));
+        }
+        if (codes[c] == NONE) {
+            alphabetSize += 1;
+            if (alphabetSize == alphabet.length) {
+                alphabet = Arrays.copyOf(alphabet, alphabet.length * 2);
+            }
+            alphabet[alphabetSize] = c;
+            codes[c] = alphabetSize;
+        }
+        return codes[c];
+    }
+
+    /** Adds a child to S on code C, which S does not have yet, and returns its slot. */
+    private int insertChild(int s, int c) {
+        if (firstChild[s] == NONE) {
+            base[s] = findBase(new int[] {c});
+        } else {
+            int t = base[s] + c;
+            if (t < check.length && check[t] != FREE) {
+                relocate(s, findBase(childCodes(s, c)));
+            }
+        }
+        int t = base[s] + c;
+        claim(t, s);
+
+        // Link it in among its siblings, in character order.
+        if (firstChild[s] == NONE || alphabet[c] < alphabet[firstChild[s]]) {
+            nextSibling[t] = firstChild[s];
+            firstChild[s] = c;
+        } else {
+            int prev = base[s] + firstChild[s];
+            while (nextSibling[prev] != NONE && alphabet[nextSibling[prev]] < alphabet[c]) {
+                prev = base[s] + nextSibling[prev];
+            }
+            nextSibling[t] = nextSibling[prev];
+            nextSibling[prev] = c;
+        }
+        return t;
+    }
+
+    /** Returns the codes of the children of S, followed by EXTRA. */
+    private int[] childCodes(int s, int extra) {
+        int n = 1;
+        for (int c = firstChild[s]; c != NONE; c = nextSibling[base[s] + c]) {
+            n += 1;
+        }
+        int[] children = new int[n];
+        int i = 0;
+        for (int c = firstChild[s]; c != NONE; c = nextSibling[base[s] + c]) {
+            children[i] = c;
+            i += 1;
+        }
+        children[i] = extra;
+        return children;
+    }
+
+    /** Returns a base b >= 1 for which every slot b + c, c in CHILDREN, is free. */
+    private int findBase(int[] children) {
+        if (freeHead >= 0) {
+            int t = freeHead;
+            do {
+                int b = t - children[0];
+                if (b >= 1 && fits(b, children)) {
+                    return b;
+                }
+                t = base[t];
+            } while (t != freeHead);
+        }
+        // Past the end of the arrays, every slot is free.
+        int minCode = children[0];
+        for (int c : children) {
+            minCode = Math.min(minCode, c);
+        }
+        return Math.max(1, check.length - minCode);
+    }
+
+    private boolean fits(int b, int[] children) {
+        for (int c : children) {
+            int t = b + c;
+            if (t < check.length && check[t] != FREE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Moves every child of S so that it hangs off NEWBASE. */
+    private void relocate(int s, int newBase) {
+        int oldBase = base[s];
+        // Walking the sibling links, not every code, means a child that has
+        // just moved is never mistaken for one still waiting to.
+        int c = firstChild[s];
+        while (c != NONE) {
+            int from = oldBase + c;
+            int to = newBase + c;
+            int next = nextSibling[from];
+            claim(to, s);
+            base[to] = base[from];
+            firstChild[to] = firstChild[from];
+            nextSibling[to] = next;
+            isKey[to] = isKey[from];
+            weight[to] = weight[from];
+            maxWeight[to] = maxWeight[from];
+            // The grandchildren stay where they are but have a new parent slot.
+            for (int d = firstChild[from]; d != NONE; d = nextSibling[base[from] + d]) {
+                check[base[from] + d] = to;
+            }
+            release(from);
+            c = next;
+        }
+        base[s] = newBase;
+    }
+
+    private void claim(int t, int parent) {
+        if (t >= check.length) {
+            resize(Math.max(t + 1, check.length + (check.length >> 1)));
+        }
+        unlink(t);
+        check[t] = parent;
+        base[t] = 0;
+        firstChild[t] = NONE;
+        nextSibling[t] = NONE;
+        isKey[t] = false;
+        weight[t] = 0;
+        maxWeight[t] = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Marks slot T free and adds it to the free list. */
+    private void release(int t) {
+        check[t] = FREE;
+        nextSibling[t] = NONE;
+        isKey[t] = false;
+        if (freeHead < 0) {
+            base[t] = t;
+            firstChild[t] = t;
+        } else {
+            base[t] = freeHead;
+            firstChild[t] = firstChild[freeHead];
+            base[firstChild[freeHead]] = t;
+            firstChild[freeHead] = t;
+        }
+        freeHead = t;
+    }
+
+    /** Takes the free slot T off the free list. */
+    private void unlink(int t) {
+        int next = base[t];
+        int prev = firstChild[t];
+        if (next == t) {
+            freeHead = -1;
+        } else {
+            base[prev] = next;
+            firstChild[next] = prev;
+            if (freeHead == t) {
+                freeHead = next;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int old = check.length;
+        base = Arrays.copyOf(base, capacity);
+        check = Arrays.copyOf(check, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        isKey = Arrays.copyOf(isKey, capacity);
+        weight = Arrays.copyOf(weight, capacity);
+        maxWeight = Arrays.copyOf(maxWeight, capacity);
+        // Backwards, so that the lowest new slot ends up at the head of the list.
+        for (int t = capacity - 1; t >= old; t -= 1) {
+            release(t);
+        }
+    }
+}
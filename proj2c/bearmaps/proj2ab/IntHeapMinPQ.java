@@ -0,0 +1,166 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An indexed 4-ary min heap over the int items 0 .. capacity - 1. Items and
+ * priorities live in parallel primitive arrays and an index array records
+ * where every item sits in the heap, so none of the operations allocate.
+ * A 4-ary heap is shallower than a binary one, which makes the frequent
+ * changePriority calls of a shortest paths search cheaper.
+ */
+public class IntHeapMinPQ {
+    private static final int ARITY = 4;
+
+    private int[] items;
+    private double[] priorities;
+    private int[] positions; // positions[item] is the heap slot of item, or -1.
+    private int size;
+
+    public IntHeapMinPQ(int capacity) {
+        items = new int[capacity];
+        priorities = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /* Grows the heap so it can hold the items 0 .. capacity - 1. */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= positions.length) {
+            return;
+        }
+        int oldCapacity = positions.length;
+        items = Arrays.copyOf(items, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        Arrays.fill(positions, oldCapacity, capacity, -1);
+    }
+
+    /* Adds an item with the given priority value. Throws an
+     * IllegalArgumentException if item is already present. */
+    public void add(int item, double priority) {
+        if (contains(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        items[size] = item;
+        priorities[size] = priority;
+        positions[item] = size;
+        size += 1;
+        climb(size - 1);
+    }
+
+    /* Returns true if the PQ contains the given item. */
+    public boolean contains(int item) {
+        return positions[item] >= 0;
+    }
+
+    /* Returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return items[0];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public double smallestPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return priorities[0];
+    }
+
+    /* Removes and returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int removeSmallest() {
+        int smallest = getSmallest();
+        size -= 1;
+        positions[smallest] = -1;
+        if (size > 0) {
+            items[0] = items[size];
+            priorities[0] = priorities[size];
+            positions[items[0]] = 0;
+            sink(0);
+        }
+        return smallest;
+    }
+
+    /* Changes the priority of the given item. Throws NoSuchElementException if the item
+     * doesn't exist. */
+    public void changePriority(int item, double priority) {
+        if (!contains(item)) {
+            throw new NoSuchElementException(item + " not in PQ.");
+        }
+        int index = positions[item];
+        double oldPriority = priorities[index];
+        priorities[index] = priority;
+        if (oldPriority < priority) {
+            sink(index);
+        } else {
+            climb(index);
+        }
+    }
+
+    /* Returns the number of items in the PQ. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* Removes every item. Runs in time proportional to the current size, not the capacity. */
+    public void clear() {
+        for (int i = 0; i < size; i += 1) {
+            positions[items[i]] = -1;
+        }
+        size = 0;
+    }
+
+    // Helper of add() and changePriority(). Moves the hole up instead of swapping.
+    private void climb(int i) {
+        int item = items[i];
+        double priority = priorities[i];
+        while (i > 0) {
+            int parent = (i - 1) / ARITY;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            place(i, items[parent], priorities[parent]);
+            i = parent;
+        }
+        place(i, item, priority);
+    }
+
+    // Helper of removeSmallest() and changePriority().
+    private void sink(int i) {
+        int item = items[i];
+        double priority = priorities[i];
+        while (true) {
+            int firstChild = ARITY * i + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + ARITY, size);
+            int smallest = firstChild;
+            for (int c = firstChild + 1; c < lastChild; c += 1) {
+                if (priorities[c] < priorities[smallest]) {
+                    smallest = c;
+                }
+            }
+            if (priorities[smallest] >= priority) {
+                break;
+            }
+            place(i, items[smallest], priorities[smallest]);
+            i = smallest;
+        }
+        place(i, item, priority);
+    }
+
+    private void place(int index, int item, double priority) {
+        items[index] = item;
+        priorities[index] = priority;
+        positions[item] = index;
+    }
+}
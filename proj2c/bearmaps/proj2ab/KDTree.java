@@ -1,135 +1,509 @@
 package bearmaps.proj2ab;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * A KD-tree bulk-built by median splits and stored in flat arrays. There
+ * are no node objects: the subtree over slots [lo, hi) has its root at
+ * mid = (lo + hi) / 2, its left subtree in [lo, mid) and its right subtree
+ * in [mid + 1, hi), and splits on x at even depths and y at odd depths.
+ * So the tree is balanced, and a search walks contiguous memory.
+ *
+ * Each point carries an int id, which is its index in the input list for
+ * the List constructor.
+ */
 public class KDTree implements PointSet {
-    private static final boolean HORIZONTAL = false;
-    private Node root;
+    /** Subtrees smaller than this are built on the current thread. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;
+    // cos(latitude) of each slot, filled in once the layout is final.
+    private final double[] cosYs;
 
     public KDTree(List<Point> points) {
-        Collections.shuffle(points);
-        for (Point point : points) {
-            root = insert(point, root, HORIZONTAL);
+        int n = points.size();
+        xs = new double[n];
+        ys = new double[n];
+        ids = new int[n];
+        cosYs = new double[n];
+        int i = 0;
+        for (Point p : points) {
+            xs[i] = p.getX();
+            ys[i] = p.getY();
+            ids[i] = i;
+            i += 1;
         }
+        build();
+        fillCosines();
     }
 
-    // Insert points into the KDTree.
-    private Node insert(Point point, Node node, boolean splitDim) {
-        if (node == null) {
-            return new Node(point, splitDim);
-        }
+    /**
+     * Builds a tree of the points (XS[i], YS[i]) with ids IDS[i]. The arrays
+     * are copied, not modified.
+     */
+    public KDTree(double[] xs, double[] ys, int[] ids) {
+        this(xs, ys, ids, xs.length);
+    }
+
+    /**
+     * Builds a tree of the first N points (XS[i], YS[i]) with ids IDS[i].
+     * The arrays are copied, not modified, so they may be longer than N.
+     */
+    public KDTree(double[] xs, double[] ys, int[] ids, int n) {
+        this(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), Arrays.copyOf(ids, n), true);
+    }
 
-        // If point has the same coordinate as the node point,
-        // just return the node;
-        if (point.equals(node.getPoint())) {
-            return node;
+    /**
+     * Makes the tree whose slots are XS, YS and IDS, keeping the arrays
+     * themselves. If BUILD, they are first rearranged into a tree; otherwise
+     * they must already be laid out as one.
+     */
+    private KDTree(double[] xs, double[] ys, int[] ids, boolean build) {
+        this.xs = xs;
+        this.ys = ys;
+        this.ids = ids;
+        cosYs = new double[xs.length];
+        if (build) {
+            build();
         }
+        fillCosines();
+    }
+
+    /**
+     * Returns the tree whose slots already hold XS, YS and IDS, as read back
+     * through size, x, y and id from another tree. Nothing is rebuilt.
+     */
+    public static KDTree fromLayout(double[] xs, double[] ys, int[] ids) {
+        return new KDTree(xs, ys, ids, false);
+    }
 
-        int cmp = comparePoints(point, node.getPoint(), splitDim);
-        if (cmp < 0) {
-            node.left = insert(point, node.getLeft(), !splitDim);
+    private void build() {
+        if (xs.length < PARALLEL_THRESHOLD) {
+            new Build(0, xs.length, 0).compute();
         } else {
-            node.right = insert(point, node.getRight(), !splitDim);
+            ForkJoinPool.commonPool().invoke(new Build(0, xs.length, 0));
+        }
+    }
+
+    private void fillCosines() {
+        for (int i = 0; i < ys.length; i += 1) {
+            cosYs[i] = Math.cos(Math.toRadians(ys[i]));
         }
+    }
+
+    /** Splits one subtree at its median, then builds both halves, in parallel if large. */
+    private class Build extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int depth;
 
-        return node;
+        Build(int lo, int hi, int depth) {
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= 1) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, depth % 2 == 0 ? xs : ys);
+            Build left = new Build(lo, mid, depth + 1);
+            Build right = new Build(mid + 1, hi, depth + 1);
+            if (hi - lo < PARALLEL_THRESHOLD) {
+                left.compute();
+                right.compute();
+            } else {
+                invokeAll(left, right);
+            }
+        }
+    }
+
+    /**
+     * Rearranges slots LO..HI (inclusive) so that slot K holds the point
+     * that would be there if they were sorted by KEYS, with no larger key
+     * before it and no smaller key after it. Quickselect, median of three.
+     */
+    private void select(int lo, int hi, int k, double[] keys) {
+        while (hi > lo) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < keys[lo]) {
+                swap(mid, lo);
+            }
+            if (keys[hi] < keys[lo]) {
+                swap(hi, lo);
+            }
+            if (keys[hi] < keys[mid]) {
+                swap(hi, mid);
+            }
+            double pivot = keys[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i += 1;
+                }
+                while (keys[j] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    /** Returns the x coordinate of the point in slot I of the layout. */
+    public double x(int i) {
+        return xs[i];
+    }
+
+    /** Returns the y coordinate of the point in slot I of the layout. */
+    public double y(int i) {
+        return ys[i];
+    }
+
+    /** Returns the id of the point in slot I of the layout. */
+    public int id(int i) {
+        return ids[i];
     }
 
     @Override
     // Find the nearest point to the target point.
     public Point nearest(double x, double y) {
-        Point target = new Point(x, y);
-        return nearest(root, target, root.getPoint());
+        if (xs.length == 0) {
+            return null;
+        }
+        int best = nearestSlot(x, y);
+        return new Point(xs[best], ys[best]);
+    }
+
+    /**
+     * Returns the id of the point nearest to (X, Y), or -1 if the tree is
+     * empty. Works on raw doubles and allocates nothing.
+     */
+    public int nearestId(double x, double y) {
+        if (xs.length == 0) {
+            return -1;
+        }
+        return ids[nearestSlot(x, y)];
+    }
+
+    private int nearestSlot(double x, double y) {
+        double cosY = Math.cos(Math.toRadians(y));
+        int root = xs.length >>> 1;
+        return nearest(0, xs.length, 0, x, y, cosY, root, haversine(root, x, y, cosY));
     }
 
-    private Point nearest(Node node, Point target, Point best) {
-        if (node == null) {
+    /**
+     * Returns the slot nearest to (X, Y) in the subtree over [LO, HI), or
+     * BEST if none is nearer than BESTHAV, the haversine of BEST.
+     */
+    private int nearest(int lo, int hi, int depth, double x, double y, double cosY,
+                        int best, double bestHav) {
+        if (lo >= hi) {
             return best;
         }
+        int mid = (lo + hi) >>> 1;
 
         // Compare the current best point with the current node's point.
-        double bestDist = Point.distance(best, target);
-        double currDist = Point.distance(node.getPoint(), target);
-        if (Double.compare(currDist, bestDist) < 0) {
-            best = node.getPoint();
-        }
-
-        Node goodSideNode;
-        Node badSideNode;
-        int cmp = comparePoints(target, node.getPoint(), node.getSplitDim());
-        if (cmp < 0) {
-            goodSideNode = node.getLeft();
-            badSideNode = node.getRight();
-        } else {
-            goodSideNode = node.getRight();
-            badSideNode = node.getLeft();
+        double currHav = haversine(mid, x, y, cosY);
+        if (currHav < bestHav) {
+            best = mid;
+            bestHav = currHav;
         }
 
+        boolean splitOnX = depth % 2 == 0;
+        int cmp = splitOnX ? Double.compare(x, xs[mid]) : Double.compare(y, ys[mid]);
+        int goodLo = cmp < 0 ? lo : mid + 1;
+        int goodHi = cmp < 0 ? mid : hi;
+        int badLo = cmp < 0 ? mid + 1 : lo;
+        int badHi = cmp < 0 ? hi : mid;
+
         // DFS in goodSide first, then check the badSide, done recursively.
-        best = nearest(goodSideNode, target, best);
-        if (isWorthLooking(node, target, best)) {
-            best = nearest(badSideNode, target, best);
+        int goodBest = nearest(goodLo, goodHi, depth + 1, x, y, cosY, best, bestHav);
+        if (goodBest != best) {
+            best = goodBest;
+            bestHav = haversine(best, x, y, cosY);
         }
 
+        // The badSide is worth looking at only if the splitting line is
+        // closer to the target than the best point so far.
+        if (haversineToSplit(mid, splitOnX, x, y, cosY) < bestHav) {
+            best = nearest(badLo, badHi, depth + 1, x, y, cosY, best, bestHav);
+        }
         return best;
     }
 
-    // Check whether the badSide intersects with the circle that,
-    // centred at target point with radius of square distance between
-    // target point and best point. If intersects, then the badSide is
-    // worth looking.
-    private boolean isWorthLooking(Node node, Point target, Point best) {
-        double distToBest = Point.distance(best, target);
-        double distToBad;
-        if (node.splitDim == HORIZONTAL) {
-            distToBad = Point.distance(new Point(node.point.getX(), target.getY()), target);
-        } else {
-            distToBad = Point.distance(new Point(target.getX(), node.point.getY()), target);
+    /**
+     * Returns the haversine of the angle between slot I and (X, Y), where
+     * COSY is the cosine of Y. It grows with Point.distance, so searches
+     * compare these directly and skip the atan2 and square roots, and the
+     * cosine of every point's latitude is computed once, when it is laid out.
+     */
+    private double haversine(int i, double x, double y, double cosY) {
+        double sinHalfDphi = Math.sin(Math.toRadians(y - ys[i]) / 2.0);
+        double sinHalfDlambda = Math.sin(Math.toRadians(x - xs[i]) / 2.0);
+        return sinHalfDphi * sinHalfDphi + cosYs[i] * cosY * sinHalfDlambda * sinHalfDlambda;
+    }
+
+    /**
+     * Returns a lower bound on the haversine between (X, Y) and any point on
+     * the other side of the line splitting at slot MID. A latitude line is
+     * nearest straight north or south. A longitude line is nearest along the
+     * great circle that meets it at a right angle, at cross-track angle d
+     * with sin(d) = cos(y) * sin(dlambda).
+     */
+    private double haversineToSplit(int mid, boolean splitOnX, double x, double y, double cosY) {
+        if (!splitOnX) {
+            double sinHalfDphi = Math.sin(Math.toRadians(y - ys[mid]) / 2.0);
+            return sinHalfDphi * sinHalfDphi;
         }
-        return Double.compare(distToBad, distToBest) < 0;
+        double dlambda = Math.min(Math.abs(Math.toRadians(x - xs[mid])), Math.PI / 2);
+        double sinD = Math.min(1.0, cosY * Math.sin(dlambda));
+        // hav(d) = (1 - cos(d)) / 2
+        return (1.0 - Math.sqrt(1.0 - sinD * sinD)) / 2.0;
     }
 
-    // Compare two points based on the split dimension of the current node.
-    private int comparePoints(Point a, Point b, boolean splitDim) {
-        if (splitDim == HORIZONTAL) {
-            return Double.compare(a.getX(), b.getX());
-        } else {
-            return Double.compare(a.getY(), b.getY());
+    /**
+     * Returns the K points nearest to (X, Y), nearest first. Returns all of
+     * them if there are no more than K.
+     */
+    public List<Point> kNearest(double x, double y, int k) {
+        return toPoints(kNearestSlots(x, y, k));
+    }
+
+    /** Returns every point within distance R of (X, Y), nearest first. */
+    public List<Point> withinRadius(double x, double y, double r) {
+        return toPoints(withinRadiusSlots(x, y, r));
+    }
+
+    private List<Point> toPoints(int[] slots) {
+        List<Point> points = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            points.add(new Point(xs[slot], ys[slot]));
         }
+        return points;
     }
 
-    private class Node {
-        private Point point;
-        private boolean splitDim;
-        private Node left;
-        private Node right;
+    /**
+     * Returns the ids of the K points nearest to (X, Y), nearest first.
+     * The K best so far are kept in a bounded max-heap, so a subtree is
+     * pruned as soon as it cannot beat the worst of them.
+     */
+    public int[] kNearestIds(double x, double y, int k) {
+        int[] slots = kNearestSlots(x, y, k);
+        for (int i = 0; i < slots.length; i += 1) {
+            slots[i] = ids[slots[i]];
+        }
+        return slots;
+    }
 
-        Node(Point point, boolean splitDim) {
-            this.point = point;
-            this.splitDim = splitDim;
-            left = null;
-            right = null;
+    private int[] kNearestSlots(double x, double y, int k) {
+        KNearest search = new KNearest(Math.min(k, xs.length));
+        if (search.capacity > 0) {
+            search.visit(0, xs.length, 0, x, y, Math.cos(Math.toRadians(y)));
         }
+        return search.sortedSlots();
+    }
+
+    /** A bounded max-heap of the nearest slots found so far, keyed by haversine. */
+    private class KNearest {
+        private final int capacity;
+        private final double[] hav;
+        private final int[] slot;
+        private int size;
 
-        public Point getPoint() {
-            return point;
+        KNearest(int capacity) {
+            this.capacity = Math.max(0, capacity);
+            hav = new double[this.capacity];
+            slot = new int[this.capacity];
         }
 
-        public Node getLeft() {
-            return left;
+        private double worst() {
+            return size < capacity ? Double.POSITIVE_INFINITY : hav[0];
         }
 
-        public Node getRight() {
-            return right;
+        void visit(int lo, int hi, int depth, double x, double y, double cosY) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            offer(mid, haversine(mid, x, y, cosY));
+
+            boolean splitOnX = depth % 2 == 0;
+            int cmp = splitOnX ? Double.compare(x, xs[mid]) : Double.compare(y, ys[mid]);
+            if (cmp < 0) {
+                visit(lo, mid, depth + 1, x, y, cosY);
+                if (haversineToSplit(mid, splitOnX, x, y, cosY) < worst()) {
+                    visit(mid + 1, hi, depth + 1, x, y, cosY);
+                }
+            } else {
+                visit(mid + 1, hi, depth + 1, x, y, cosY);
+                if (haversineToSplit(mid, splitOnX, x, y, cosY) < worst()) {
+                    visit(lo, mid, depth + 1, x, y, cosY);
+                }
+            }
         }
 
-        public boolean getSplitDim() {
-            return splitDim;
+        private void offer(int s, double h) {
+            if (size < capacity) {
+                hav[size] = h;
+                slot[size] = s;
+                size += 1;
+                swim(size - 1);
+            } else if (h < hav[0]) {
+                hav[0] = h;
+                slot[0] = s;
+                sink(0);
+            }
+        }
+
+        private void swim(int i) {
+            while (i > 0 && hav[(i - 1) / 2] < hav[i]) {
+                exchange(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void sink(int i) {
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && hav[child + 1] > hav[child]) {
+                    child += 1;
+                }
+                if (hav[i] >= hav[child]) {
+                    return;
+                }
+                exchange(i, child);
+                i = child;
+            }
+        }
+
+        private void exchange(int i, int j) {
+            double h = hav[i];
+            hav[i] = hav[j];
+            hav[j] = h;
+            int s = slot[i];
+            slot[i] = slot[j];
+            slot[j] = s;
+        }
+
+        /** Empties the heap, returning its slots nearest first. */
+        int[] sortedSlots() {
+            int[] sorted = new int[size];
+            while (size > 0) {
+                sorted[size - 1] = slot[0];
+                size -= 1;
+                exchange(0, size);
+                sink(0);
+            }
+            return sorted;
         }
     }
 
-//    public static void main(String[] args) {
-//
-//    }
+    /** Returns the ids of every point within distance R of (X, Y), nearest first. */
+    public int[] withinRadiusIds(double x, double y, double r) {
+        int[] slots = withinRadiusSlots(x, y, r);
+        for (int i = 0; i < slots.length; i += 1) {
+            slots[i] = ids[slots[i]];
+        }
+        return slots;
+    }
+
+    private int[] withinRadiusSlots(double x, double y, double r) {
+        double cosY = Math.cos(Math.toRadians(y));
+        double maxHav = r < 0 ? -1 : Point.haversineOf(r);
+        int[] found = new int[16];
+        double[] foundHav = new double[16];
+        int numFound = 0;
+        // Explicit stack of [lo, hi, depth] ranges still to visit.
+        int[] stack = new int[3 * 64];
+        int top = 0;
+        if (xs.length > 0) {
+            stack[top++] = 0;
+            stack[top++] = xs.length;
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int depth = stack[--top];
+            int hi = stack[--top];
+            int lo = stack[--top];
+            int mid = (lo + hi) >>> 1;
+            double h = haversine(mid, x, y, cosY);
+            if (h <= maxHav) {
+                if (numFound == found.length) {
+                    found = Arrays.copyOf(found, numFound * 2);
+                    foundHav = Arrays.copyOf(foundHav, numFound * 2);
+                }
+                found[numFound] = mid;
+                foundHav[numFound] = h;
+                numFound += 1;
+            }
+
+            boolean splitOnX = depth % 2 == 0;
+            int cmp = splitOnX ? Double.compare(x, xs[mid]) : Double.compare(y, ys[mid]);
+            boolean crosses = haversineToSplit(mid, splitOnX, x, y, cosY) <= maxHav;
+            if (top + 6 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (lo < mid && (cmp < 0 || crosses)) {
+                stack[top++] = lo;
+                stack[top++] = mid;
+                stack[top++] = depth + 1;
+            }
+            if (mid + 1 < hi && (cmp >= 0 || crosses)) {
+                stack[top++] = mid + 1;
+                stack[top++] = hi;
+                stack[top++] = depth + 1;
+            }
+        }
+
+        Integer[] order = new Integer[numFound];
+        for (int i = 0; i < numFound; i += 1) {
+            order[i] = i;
+        }
+        double[] hav = foundHav;
+        Arrays.sort(order, (i, j) -> Double.compare(hav[i], hav[j]));
+        int[] slots = new int[numFound];
+        for (int i = 0; i < numFound; i += 1) {
+            slots[i] = found[order[i]];
+        }
+        return slots;
+    }
 }
@@ -0,0 +1,58 @@
+package bearmaps.proj2ab;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class NaivePointSet implements PointSet {
+
+    private List<Point> points;
+
+    public NaivePointSet(List<Point> points) {
+        this.points = points;
+    }
+
+    @Override
+    public Point nearest(double x, double y) {
+        Point targetPoint = new Point(x, y);
+        Point nearestPoint = points.get(0);
+        double shortestDist = Point.distance(targetPoint, nearestPoint);
+        for (int i = 1; i < points.size(); i += 1) {
+            double currDist = Point.distance(targetPoint, points.get(i));
+            if (currDist < shortestDist) {
+                shortestDist = currDist;
+                nearestPoint = points.get(i);
+            }
+        }
+        return nearestPoint;
+    }
+
+    /**
+     * Returns the K points nearest to (X, Y), nearest first. Returns all of
+     * them if there are no more than K.
+     */
+    public List<Point> kNearest(double x, double y, int k) {
+        List<Point> sorted = byDistance(points, x, y);
+        return sorted.subList(0, Math.max(0, Math.min(k, sorted.size())));
+    }
+
+    /** Returns every point within distance R of (X, Y), nearest first. */
+    public List<Point> withinRadius(double x, double y, double r) {
+        Point targetPoint = new Point(x, y);
+        List<Point> within = new ArrayList<>();
+        for (Point p : points) {
+            if (Point.distance(targetPoint, p) <= r) {
+                within.add(p);
+            }
+        }
+        return byDistance(within, x, y);
+    }
+
+    /** Returns a copy of POINTS sorted by distance to (X, Y), nearest first. */
+    private static List<Point> byDistance(List<Point> points, double x, double y) {
+        Point targetPoint = new Point(x, y);
+        List<Point> sorted = new ArrayList<>(points);
+        sorted.sort(Comparator.comparingDouble(p -> Point.distance(targetPoint, p)));
+        return sorted;
+    }
+}
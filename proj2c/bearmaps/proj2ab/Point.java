@@ -38,6 +38,16 @@ public class Point {
         return 3963 * c;
     }
 
+    /**
+     * Returns the haversine of the central angle spanned by a great-circle
+     * DISTANCE, the quantity called a in distance above. It increases with
+     * the distance, so it can stand in for it in comparisons.
+     */
+    static double haversineOf(double distance) {
+        double sinHalfAngle = Math.sin(Math.min(distance / 3963, Math.PI) / 2.0);
+        return sinHalfAngle * sinHalfAngle;
+    }
+
     /**
      * Returns the haversine distance squared between two points, assuming
      * x represents the longitude and y represents the latitude.
@@ -1,67 +1,201 @@
 package bearmaps.proj2c;
 
+import bearmaps.hw4.LandmarkAStarGraph;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.ch.ContractionHierarchy;
+import bearmaps.hw4.ch.ContractionHierarchyBuilder;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
 import bearmaps.hw4.streetmap.Node;
 import bearmaps.hw4.streetmap.StreetMapGraph;
 import bearmaps.proj2ab.KDTree;
-import bearmaps.proj2ab.Point;
-import bearmaps.lab9.MyTrieSet;
+import bearmaps.lab9.CompactTrieSet;
+import bearmaps.proj2c.utils.Constants;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 
 
 public class AugmentedStreetMapGraph extends StreetMapGraph {
-    private Map<Point, Long> pointToID;
     private KDTree kdTree;
 
-    private MyTrieSet trieSet;
-    private Map<String, List<Node>> cleanedNameToNodes;
+    private NameTable names;
+    private CompactTrieSet trieSet;
+    private TokenIndex tokenIndex;
+
+    private CompactStreetMapGraph compactGraph;
+    private ContractionHierarchy contractionHierarchy;
+    private LandmarkAStarGraph<CompactStreetMapGraph> landmarkGraph;
+    private RouteCache routeCache;
 
     public AugmentedStreetMapGraph(String dbPath) {
         super(dbPath);
+        compactGraph = new CompactStreetMapGraph(this);
         // You might find it helpful to uncomment the line below:
         // List<Node> nodes = this.getNodes();
-        pointToID = new HashMap<>();
-        List<Point> points = new LinkedList<>();
         List<Node> nodes = this.getNodes();
-
-        trieSet = new MyTrieSet();
-        cleanedNameToNodes = new HashMap<>();
-        List<Node> nodesList;
+        double[] xs = new double[nodes.size()];
+        double[] ys = new double[nodes.size()];
+        int[] vertices = new int[nodes.size()];
+        int numPoints = 0;
 
         for (Node node : nodes) {
-            // If the node has a name, clean it, then add it to the trieSet,
-            // and put the (cleaned name, list of nodes) pair into the cleanedNameToNodes map.
-            if (node.name() != null) {
-                String cleanedName = cleanString(node.name());
-
-                trieSet.add(cleanedName);
-
-                if (!cleanedNameToNodes.containsKey(cleanedName)) {
-                    cleanedNameToNodes.put(cleanedName, new LinkedList<>());
-                }
-                // Replace the old list that mapped to the specific cleanedName with new one.
-                nodesList = cleanedNameToNodes.get(cleanedName);
-                nodesList.add(node);
-                cleanedNameToNodes.put(cleanedName, nodesList);
-            }
-
             // Only consider the node that has neighbors,
-            // and turn these nodes to Points to service
-            // the KDTree.
+            // and hand these nodes to the KDTree,
+            // identified by their index in compactGraph.
             long id = node.id();
             if (!this.neighbors(id).isEmpty()) {
                 double x = node.lon();
                 double y = node.lat();
-                Point point = new Point(x, y);
-
-                points.add(point);
-                pointToID.put(point, id);
+                xs[numPoints] = x;
+                ys[numPoints] = y;
+                vertices[numPoints] = compactGraph.indexOf(id);
+                numPoints += 1;
             }
         }
 
-        kdTree = new KDTree(points);
+        kdTree = new KDTree(xs, ys, vertices, numPoints);
+        indexNames();
+    }
+
+    /**
+     * Reads a graph written by writeSnapshot. Use GraphSnapshot.load rather
+     * than calling this directly, since it checks the snapshot is current.
+     * @param snapshot The snapshot, positioned at the start of the graph.
+     */
+    AugmentedStreetMapGraph(ByteBuffer snapshot) {
+        super(snapshot);
+        compactGraph = new CompactStreetMapGraph(this);
+
+        // The KD-tree layout, as vertex indices of compactGraph.
+        int numPoints = snapshot.getInt();
+        double[] xs = new double[numPoints];
+        double[] ys = new double[numPoints];
+        int[] vertices = new int[numPoints];
+        for (int i = 0; i < numPoints; i += 1) {
+            int v = snapshot.getInt();
+            xs[i] = compactGraph.lon(v);
+            ys[i] = compactGraph.lat(v);
+            vertices[i] = v;
+        }
+        kdTree = KDTree.fromLayout(xs, ys, vertices);
+        indexNames();
+    }
+
+    /**
+     * Builds the name table from the node names, then the prefix trie and the
+     * word index over the cleaned names. This is cheap enough that snapshots
+     * do not store it.
+     */
+    private void indexNames() {
+        String[] rawNames = new String[compactGraph.numVertices()];
+        for (int v = 0; v < rawNames.length; v += 1) {
+            rawNames[v] = compactGraph.name(v);
+        }
+        names = new NameTable(rawNames);
+
+        // Each cleaned name is ranked by how many nodes carry it.
+        trieSet = new CompactTrieSet();
+        for (int c = 0; c < names.size(); c += 1) {
+            trieSet.add(names.cleanedName(c), names.count(c));
+        }
+        trieSet.trimToSize();
+
+        String[] cleanedNames = new String[rawNames.length];
+        for (int v = 0; v < cleanedNames.length; v += 1) {
+            int c = names.cleanedNameOf(v);
+            cleanedNames[v] = c < 0 ? null : names.cleanedName(c);
+        }
+        tokenIndex = new TokenIndex(cleanedNames);
+    }
+
+    /**
+     * Writes the graph, then the KD-tree layout, with every node given by its
+     * index in compactGraph.
+     */
+    @Override
+    protected void writeSnapshot(DataOutputStream out) throws IOException {
+        super.writeSnapshot(out);
+
+        out.writeInt(kdTree.size());
+        for (int i = 0; i < kdTree.size(); i += 1) {
+            out.writeInt(kdTree.id(i));
+        }
+    }
+
+
+    /**
+     * Returns the array-backed copy of this graph, for callers that want to
+     * walk edges by dense vertex index instead of boxed OSM ids.
+     */
+    public CompactStreetMapGraph compactGraph() {
+        return compactGraph;
     }
 
+    /**
+     * Returns the recently found routes on this graph, holding about
+     * Constants.ROUTE_CACHE_BYTES of them.
+     */
+    public synchronized RouteCache routeCache() {
+        if (routeCache == null) {
+            routeCache = new RouteCache(compactGraph, Constants.ROUTE_CACHE_BYTES);
+        }
+        return routeCache;
+    }
+
+    /**
+     * Returns the contraction hierarchy of this graph. The first call reads
+     * it from CHPATH if that file exists and was built from this graph, and
+     * contracts the graph in memory otherwise.
+     * @param chPath The file written by ContractionHierarchyBuilder.
+     * @return The contraction hierarchy.
+     */
+    public synchronized ContractionHierarchy contractionHierarchy(String chPath) {
+        if (contractionHierarchy == null) {
+            if (new File(chPath).exists()) {
+                try {
+                    contractionHierarchy = ContractionHierarchy.load(chPath, compactGraph);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (contractionHierarchy == null) {
+                contractionHierarchy = new ContractionHierarchyBuilder(compactGraph).build();
+            }
+        }
+        return contractionHierarchy;
+    }
+
+    /**
+     * Returns the compact graph with the ALT landmark heuristic. The first
+     * call reads the landmarks from LANDMARKSPATH if that file exists and
+     * was computed for this graph, and picks NUMLANDMARKS of them otherwise.
+     * @param landmarksPath The file written by Landmarks.
+     * @param numLandmarks How many landmarks to pick if the file is unusable.
+     * @return The graph with the landmark heuristic.
+     */
+    public synchronized LandmarkAStarGraph<CompactStreetMapGraph> landmarkGraph(
+            String landmarksPath, int numLandmarks) {
+        if (landmarkGraph == null) {
+            Landmarks landmarks = null;
+            if (new File(landmarksPath).exists()) {
+                try {
+                    landmarks = Landmarks.load(landmarksPath, compactGraph);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (landmarks == null) {
+                landmarks = Landmarks.select(compactGraph, numLandmarks,
+                        Landmarks.Selection.AVOID, 0);
+            }
+            landmarkGraph = new LandmarkAStarGraph<>(compactGraph, landmarks);
+        }
+        return landmarkGraph;
+    }
 
     /**
      * For Project Part II
@@ -71,11 +205,54 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        Point closestPoint = kdTree.nearest(lon, lat);
-        return pointToID.get(closestPoint);
+        return compactGraph.idOf(kdTree.nearestId(lon, lat));
     }
 
 
+    /**
+     * Returns the ids of the routable vertices within RADIUS miles of the
+     * given longitude and latitude, nearest first.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param radius The great-circle radius, in miles.
+     * @return The ids of the nodes near the target.
+     */
+    public List<Long> nodesNear(double lon, double lat, double radius) {
+        List<Long> ids = new ArrayList<>();
+        for (int v : kdTree.withinRadiusIds(lon, lat, radius)) {
+            ids.add(compactGraph.idOf(v));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the vertex closest to the given longitude and latitude that
+     * lies on a way named WAYNAME, ignoring case. Names are not cleaned,
+     * since that would make "4th Street" and "5th Street" the same. The
+     * nearest few vertices are tried first, then ever more of them.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param wayName The name of the street to snap to.
+     * @return The id of the node, or -1 if no way has that name.
+     */
+    public long closestOnWay(double lon, double lat, String wayName) {
+        int tried = 0;
+        for (int k = 16; tried < kdTree.size(); k *= 4) {
+            int[] vertices = kdTree.kNearestIds(lon, lat, k);
+            for (int i = tried; i < vertices.length; i += 1) {
+                int v = vertices[i];
+                for (int e = compactGraph.edgeBegin(v); e < compactGraph.edgeEnd(v); e += 1) {
+                    String name = compactGraph.edgeName(e);
+                    if (wayName.equalsIgnoreCase(name)) {
+                        return compactGraph.idOf(v);
+                    }
+                }
+            }
+            tried = vertices.length;
+        }
+        return -1;
+    }
+
     /**
      * For Project Part III (gold points)
      * In linear time, collect all the names of OSM locations that prefix-match the query string.
@@ -87,15 +264,100 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
     public List<String> getLocationsByPrefix(String prefix) {
         String cleanedPrefix = cleanString(prefix);
         List<String> matchedNames = trieSet.keysWithPrefix(cleanedPrefix);
-        Set<String> locationsSet = new HashSet<>();
+        List<String> locations = new ArrayList<>();
 
+        // Raw names of different cleaned names always differ, so no set is needed.
         for (String name : matchedNames) {
-            for (Node node : cleanedNameToNodes.get(name)) {
-                locationsSet.add(node.name());
-            }
+            addRawNames(names.idOf(name), locations, Integer.MAX_VALUE);
         }
 
-        return new LinkedList<>(locationsSet);
+        return locations;
+    }
+
+    /** Adds the raw names of cleaned name C to LOCATIONS, until it holds LIMIT of them. */
+    private void addRawNames(int c, List<String> locations, int limit) {
+        for (int i = names.rawBegin(c); i < names.rawEnd(c) && locations.size() < limit; i += 1) {
+            locations.add(names.rawName(i));
+        }
+    }
+
+    /**
+     * Collects at most LIMIT names of OSM locations that prefix-match the query
+     * string, most popular first. Only the best few matches are looked at, so
+     * this stays fast for short prefixes that match most of the map.
+     * @param prefix Prefix string to be searched for. Could be any case, with or without
+     *               punctuation.
+     * @param limit The most names to return.
+     * @return A <code>List</code> of the full names of the best matching locations.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+        String cleanedPrefix = cleanString(prefix);
+        List<String> locations = new ArrayList<>();
+
+        for (String name : trieSet.topKeysWithPrefix(cleanedPrefix, limit)) {
+            addRawNames(names.idOf(name), locations, limit);
+        }
+
+        return locations;
+    }
+
+    /**
+     * Collects the names of OSM locations whose cleaned name is within
+     * MAXDISTANCE edits (insertions, deletions or substitutions) of the
+     * cleaned query, so that misspelled searches still find something.
+     * @param query The name searched for. Could be any case, with or without
+     *              punctuation.
+     * @param maxDistance The most edits allowed.
+     * @return A <code>List</code> of the full names of the matching locations,
+     * closest first and most popular first among equally close ones.
+     */
+    public List<String> getLocationsFuzzy(String query, int maxDistance) {
+        String cleanedQuery = cleanString(query);
+        List<String> locations = new ArrayList<>();
+
+        for (String name : trieSet.keysWithinDistance(cleanedQuery, maxDistance)) {
+            addRawNames(names.idOf(name), locations, Integer.MAX_VALUE);
+        }
+
+        return locations;
+    }
+
+    /**
+     * Collects the locations whose name contains every word of the query,
+     * in any order and anywhere in the name. The last word may be
+     * incomplete, and matches any word it starts, unless the query ends with
+     * a space.
+     * @param query Words to be searched for. Could be any case, with or without
+     *              punctuation.
+     * @return A list of matching locations, each a map of parameters as in
+     * <code>getLocations</code>, most popular name first as in
+     * getLocationsByPrefix with a limit.
+     */
+    public List<Map<String, Object>> getLocationsByWords(String query) {
+        int[] vertices = tokenIndex.search(cleanString(query));
+        double[] popularity = new double[vertices.length];
+        Integer[] order = new Integer[vertices.length];
+        for (int i = 0; i < vertices.length; i += 1) {
+            popularity[i] = trieSet.weight(names.cleanedName(names.cleanedNameOf(vertices[i])));
+            order[i] = i;
+        }
+        // The sort is stable, so equally popular locations stay in vertex order.
+        Arrays.sort(order, (a, b) -> Double.compare(popularity[b], popularity[a]));
+        return new LocationList(vertices.length, i -> vertices[order[i]]);
+    }
+
+    /**
+     * Sets how highly locations whose cleaned name matches LOCATIONNAME rank
+     * in getLocationsByPrefix with a limit. By default a name is ranked by
+     * how many nodes carry it.
+     * @param locationName The name of a location.
+     * @param popularity The new rank; higher comes first.
+     */
+    public void setLocationPopularity(String locationName, double popularity) {
+        String cleanedLocationName = cleanString(locationName);
+        if (names.idOf(cleanedLocationName) >= 0) {
+            trieSet.add(cleanedLocationName, popularity);
+        }
     }
 
     /**
@@ -112,32 +374,57 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * "id" -> Number, The id of the node. <br>
      */
     public List<Map<String, Object>> getLocations(String locationName) {
-        List<Map<String, Object>> locations = new LinkedList<>();
-        String cleanedLocationName = cleanString(locationName);
+        int c = names.idOf(cleanString(locationName));
+        if (c < 0) {
+            return Collections.emptyList();
+        }
+        int begin = names.begin(c);
+        return new LocationList(names.end(c) - begin, i -> names.vertex(begin + i));
+    }
 
-        if (cleanedNameToNodes.containsKey(cleanedLocationName)) {
-            for (Node node : cleanedNameToNodes.get(cleanedLocationName)) {
-                Map<String, Object> locationInfo = new HashMap<>();
-                locationInfo.put("id", node.id());
-                locationInfo.put("name", node.name());
-                locationInfo.put("lon", node.lon());
-                locationInfo.put("lat", node.lat());
-                locations.add(locationInfo);
+    /**
+     * The location maps of a run of vertices. Each map is built when it is
+     * read, which for a search response is while the JSON is written, so a
+     * query allocates nothing per matched node before that.
+     */
+    private class LocationList extends AbstractList<Map<String, Object>> {
+        private final int size;
+        private final IntUnaryOperator vertexAt;
+
+        LocationList(int size, IntUnaryOperator vertexAt) {
+            this.size = size;
+            this.vertexAt = vertexAt;
+        }
+
+        @Override
+        public Map<String, Object> get(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
             }
+            int v = vertexAt.applyAsInt(i);
+            Map<String, Object> locationInfo = new HashMap<>();
+            locationInfo.put("id", compactGraph.idOf(v));
+            locationInfo.put("name", names.rawNameOf(v));
+            locationInfo.put("lon", compactGraph.lon(v));
+            locationInfo.put("lat", compactGraph.lat(v));
+            return locationInfo;
         }
 
-        return locations;
+        @Override
+        public int size() {
+            return size;
+        }
     }
 
 
     /**
-     * Useful for Part III. Do not modify.
+     * Useful for Part III.
      * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
      * @param s Input string.
      * @return Cleaned string.
      */
     private static String cleanString(String s) {
-        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+        return NameTable.clean(s);
     }
 
 }
@@ -0,0 +1,117 @@
+package bearmaps.proj2c;
+
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary copy of an AugmentedStreetMapGraph: the cleaned graph with node
+ * and way names and the KD-tree points. Reading it skips the SAX parse of
+ * the OSM XML and the KD-tree build; the name indexes are quick to rebuild
+ * from the node names, so they are not stored. The file is memory-mapped
+ * and decoded into the graph's arrays in one sequential pass; nothing reads
+ * the mapping after that.
+ *
+ * The header records the length and modification time of the XML file the
+ * snapshot was compiled from. If the XML has changed since, the snapshot is
+ * stale and load falls back to parsing the XML.
+ *
+ * Run main to compile a snapshot:
+ * java bearmaps.proj2c.GraphSnapshot berkeley-2019.osm.xml berkeley-2019.snapshot
+ */
+public class GraphSnapshot {
+    private static final int MAGIC = 0x424d5331; // "BMS1"
+    private static final int VERSION = 3;
+
+    /**
+     * Returns the graph for the OSM file at DBPATH, read from the snapshot at
+     * SNAPSHOTPATH if that file exists and is current, and parsed from the
+     * XML otherwise.
+     * @param dbPath The OSM XML file.
+     * @param snapshotPath The snapshot compiled from it.
+     * @return The graph.
+     */
+    public static AugmentedStreetMapGraph load(String dbPath, String snapshotPath) {
+        if (new File(snapshotPath).exists()) {
+            try {
+                AugmentedStreetMapGraph g = read(snapshotPath, dbPath);
+                if (g != null) {
+                    return g;
+                }
+                System.out.println(snapshotPath + " is older than " + dbPath
+                        + ", reading the XML instead.");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new AugmentedStreetMapGraph(dbPath);
+    }
+
+    /**
+     * Reads the snapshot at SNAPSHOTPATH. Returns null if it was compiled
+     * from a different version of DBPATH than the one on disk now.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public static AugmentedStreetMapGraph read(String snapshotPath, String dbPath)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotPath),
+                StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(snapshotPath + " is not a graph snapshot.");
+            }
+            long xmlLength = buffer.getLong();
+            long xmlLastModified = buffer.getLong();
+            File xml = new File(dbPath);
+            if (xml.exists() && (xml.length() != xmlLength
+                    || xml.lastModified() != xmlLastModified)) {
+                return null;
+            }
+            return new AugmentedStreetMapGraph(buffer);
+        } catch (RuntimeException e) {
+            // A truncated or corrupt file surfaces as BufferUnderflowException and the like.
+            throw new IOException(snapshotPath + " is corrupt.", e);
+        }
+    }
+
+    /**
+     * Writes G, which was read from DBPATH, to a snapshot at SNAPSHOTPATH.
+     */
+    public static void write(AugmentedStreetMapGraph g, String dbPath, String snapshotPath)
+            throws IOException {
+        File xml = new File(dbPath);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(snapshotPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(xml.length());
+            out.writeLong(xml.lastModified());
+            g.writeSnapshot(out);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: GraphSnapshot <osm xml file> <output file>");
+            return;
+        }
+        Stopwatch sw = new Stopwatch();
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(args[0]);
+        System.out.println("Read " + args[0] + " in " + sw.elapsedTime() + " seconds.");
+
+        write(g, args[0], args[1]);
+        System.out.println("Wrote " + args[1] + " (" + new File(args[1]).length() + " bytes).");
+
+        sw = new Stopwatch();
+        read(args[1], args[0]);
+        System.out.println("Read it back in " + sw.elapsedTime() + " seconds.");
+    }
+}
@@ -0,0 +1,168 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.SearchWorkspace;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2ab.IntHeapMinPQ;
+
+import java.util.Arrays;
+
+/**
+ * The vertices reachable from a source within a distance budget, with the
+ * convex hull of their positions, for drawing the area over rasters.
+ *
+ * The expansion is Dijkstra that never queues a vertex beyond the budget,
+ * so it visits only the area it returns. Its distances, parents and fringe
+ * live in a SearchWorkspace per thread, reused by every expansion.
+ */
+public class Isochrone {
+    private static final ThreadLocal<SearchWorkspace> WORKSPACES =
+            ThreadLocal.withInitial(SearchWorkspace::new);
+
+    private final int source;
+    private final double budget;
+    private final int[] vertices;
+    private final double[] distances;
+    private final double[] hullLons;
+    private final double[] hullLats;
+
+    private Isochrone(int source, double budget, int[] vertices, double[] distances,
+                      double[] hullLons, double[] hullLats) {
+        this.source = source;
+        this.budget = budget;
+        this.vertices = vertices;
+        this.distances = distances;
+        this.hullLons = hullLons;
+        this.hullLats = hullLats;
+    }
+
+    /**
+     * Returns the vertices of G within BUDGET of vertex SOURCE, by dense
+     * index, in the units of the edge weights.
+     */
+    public static Isochrone compute(CompactStreetMapGraph g, int source, double budget) {
+        SearchWorkspace ws = WORKSPACES.get();
+        ws.reset(g.numVertices());
+        IntHeapMinPQ pq = ws.fringe();
+        int[] reached = new int[16];
+        double[] reachedDist = new double[16];
+        int n = 0;
+        if (source >= 0 && budget >= 0) {
+            ws.relax(source, 0.0, -1);
+            pq.add(source, 0.0);
+        }
+        while (!pq.isEmpty()) {
+            int v = pq.removeSmallest();
+            double distToV = ws.distTo(v);
+            if (n == reached.length) {
+                reached = Arrays.copyOf(reached, 2 * n);
+                reachedDist = Arrays.copyOf(reachedDist, 2 * n);
+            }
+            reached[n] = v;
+            reachedDist[n] = distToV;
+            n += 1;
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e += 1) {
+                int w = g.edgeTarget(e);
+                double distToW = distToV + g.edgeWeight(e);
+                if (distToW <= budget && distToW < ws.distTo(w)) {
+                    ws.relax(w, distToW, v);
+                    if (pq.contains(w)) {
+                        pq.changePriority(w, distToW);
+                    } else {
+                        pq.add(w, distToW);
+                    }
+                }
+            }
+        }
+
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            lons[i] = g.lon(reached[i]);
+            lats[i] = g.lat(reached[i]);
+        }
+        double[][] hull = convexHull(lons, lats);
+        return new Isochrone(source, budget, Arrays.copyOf(reached, n),
+                Arrays.copyOf(reachedDist, n), hull[0], hull[1]);
+    }
+
+    /**
+     * Returns the convex hull of the points (LONS[i], LATS[i]) as its corner
+     * longitudes and latitudes, counterclockwise, by Andrew's monotone chain.
+     * Fewer than three distinct points are returned as they are.
+     */
+    static double[][] convexHull(double[] lons, double[] lats) {
+        int n = lons.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> lons[a] != lons[b]
+                ? Double.compare(lons[a], lons[b]) : Double.compare(lats[a], lats[b]));
+
+        // The lower hull left to right, then the upper hull right to left.
+        int[] hull = new int[2 * n + 1];
+        int k = 0;
+        for (int i = 0; i < n; i += 1) {
+            while (k >= 2 && cross(lons, lats, hull[k - 2], hull[k - 1], order[i]) <= 0) {
+                k -= 1;
+            }
+            hull[k++] = order[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i -= 1) {
+            while (k >= lower && cross(lons, lats, hull[k - 2], hull[k - 1], order[i]) <= 0) {
+                k -= 1;
+            }
+            hull[k++] = order[i];
+        }
+        // The last point is the first one again.
+        int corners = n < 2 ? n : k - 1;
+        double[][] result = new double[2][corners];
+        for (int i = 0; i < corners; i += 1) {
+            result[0][i] = lons[hull[i]];
+            result[1][i] = lats[hull[i]];
+        }
+        return result;
+    }
+
+    /** Returns the cross product of A to B and A to C; positive if they turn counterclockwise. */
+    private static double cross(double[] lons, double[] lats, int a, int b, int c) {
+        return (lons[b] - lons[a]) * (lats[c] - lats[a]) - (lats[b] - lats[a]) * (lons[c] - lons[a]);
+    }
+
+    /** Returns the dense index of the vertex the expansion started from. */
+    public int source() {
+        return source;
+    }
+
+    public double budget() {
+        return budget;
+    }
+
+    /** Returns the number of vertices reached. */
+    public int size() {
+        return vertices.length;
+    }
+
+    /** Returns the dense index of the Ith vertex reached, in order of distance. */
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    /** Returns the distance to the Ith vertex reached. */
+    public double distance(int i) {
+        return distances[i];
+    }
+
+    /** Returns the number of corners of the hull. */
+    public int hullSize() {
+        return hullLons.length;
+    }
+
+    public double hullLon(int i) {
+        return hullLons[i];
+    }
+
+    public double hullLat(int i) {
+        return hullLats[i];
+    }
+}
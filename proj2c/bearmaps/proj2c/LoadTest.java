@@ -0,0 +1,201 @@
+package bearmaps.proj2c;
+
+import bearmaps.proj2c.server.handler.APIRouteHandlerFactory;
+import bearmaps.proj2c.server.VirtualThreadPool;
+import bearmaps.proj2c.utils.Constants;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static spark.Spark.awaitInitialization;
+
+/**
+ * Replays API traffic against a server started in this process and reports
+ * throughput and latency percentiles, overall and per endpoint. The traffic
+ * is a file of requests like those recorded by setting
+ * Constants.TRAFFIC_LOG_PATH, one "path?query" per line, or, without a
+ * file, a synthetic mix of panning and zooming viewports, routes and
+ * searches.
+ *
+ * Usage: LoadTest MODE CLIENTS [TRAFFIC_FILE]
+ *   MODE is jetty, to take requests on Jetty's own thread pool, executor,
+ *   to take them on the handler thread pool of MapServerInitializer, or
+ *   both, to run each mode in a fresh JVM one after the other. CLIENTS is the number of concurrent users; each
+ *   has its own cookies, and so its own route session, and replays the
+ *   whole traffic once.
+ */
+public class LoadTest {
+    private static final int SYNTHETIC_REQUESTS = 300;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "both";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        String trafficFile = args.length > 2 ? args[2] : null;
+        if (mode.equals("both")) {
+            for (String m : new String[]{"jetty", "executor"}) {
+                List<String> command = new ArrayList<>(Arrays.asList(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"),
+                        LoadTest.class.getName(), m, String.valueOf(clients)));
+                if (trafficFile != null) {
+                    command.add(trafficFile);
+                }
+                new ProcessBuilder(command).inheritIO().start().waitFor();
+            }
+            return;
+        }
+        if (!mode.equals("jetty") && !mode.equals("executor")) {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+
+        List<String> traffic = trafficFile != null ? Files.readAllLines(Paths.get(trafficFile))
+                : syntheticTraffic(new Random(61));
+        MapServerInitializer.initializeServer(APIRouteHandlerFactory.handlerMap,
+                Constants.SERVER_PORT, mode.equals("executor"));
+        awaitInitialization();
+        String base = "http://localhost:" + Constants.SERVER_PORT + "/";
+
+        // Warm up the caches and the JIT with one pass before measuring.
+        replay(base, traffic, 1);
+        long start = System.nanoTime();
+        Map<String, List<Long>> latencies = replay(base, traffic, clients);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        String executor = mode.equals("jetty") ? "" : VirtualThreadPool.isSupported()
+                ? " (virtual threads)" : " (" + Constants.HANDLER_THREADS + " threads)";
+        System.out.printf(Locale.ROOT, "%s%s, %d clients, %d requests each:%n",
+                mode, executor, clients, traffic.size());
+        List<Long> all = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> e : latencies.entrySet()) {
+            if (!e.getKey().equals("errors")) {
+                all.addAll(e.getValue());
+                report(e.getKey(), e.getValue(), seconds);
+            }
+        }
+        report("all", all, seconds);
+        System.out.println("  errors: " + latencies.getOrDefault("errors", List.of()).size());
+        System.exit(0);
+    }
+
+    /**
+     * Sends TRAFFIC CLIENTS times over, from CLIENTS threads at once, and
+     * returns the latencies in nanoseconds by endpoint, with failed requests
+     * under "errors".
+     */
+    private static Map<String, List<Long>> replay(String base, List<String> traffic, int clients)
+            throws InterruptedException {
+        Map<String, List<Long>> latencies = new TreeMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c += 1) {
+            threads.add(new Thread(() -> {
+                HttpClient client = HttpClient.newBuilder()
+                        .cookieHandler(new CookieManager()).build();
+                Map<String, List<Long>> mine = new TreeMap<>();
+                for (String line : traffic) {
+                    String endpoint = line.contains("?") ? line.substring(0, line.indexOf('?')) : line;
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(base + line)).build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = client.send(request,
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() >= 400) {
+                            endpoint = "errors";
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        endpoint = "errors";
+                    }
+                    mine.computeIfAbsent(endpoint, k -> new ArrayList<>()).add(System.nanoTime() - start);
+                }
+                synchronized (latencies) {
+                    mine.forEach((k, v) -> latencies.computeIfAbsent(k, x -> new ArrayList<>()).addAll(v));
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        return latencies;
+    }
+
+    private static void report(String name, List<Long> latencies, double seconds) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        if (sorted.length == 0) {
+            return;
+        }
+        System.out.printf(Locale.ROOT,
+                "  %-12s %6d requests %8.1f/s   p50 %7.1fms  p95 %7.1fms  p99 %7.1fms  max %7.1fms%n",
+                name, sorted.length, sorted.length / seconds, percentile(sorted, 0.50),
+                percentile(sorted, 0.95), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+
+    /** Returns the P-th quantile of SORTED nanoseconds, in milliseconds. */
+    private static double percentile(long[] sorted, double p) {
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    /**
+     * Returns a user's session: a viewport of 1000x700 pixels wandering over
+     * the map, panning by a third of a screen or zooming a level at a time,
+     * with a search every 10 requests and a route every 25.
+     */
+    static List<String> syntheticTraffic(Random r) {
+        double mapWidth = Constants.ROOT_LRLON - Constants.ROOT_ULLON;
+        double mapHeight = Constants.ROOT_ULLAT - Constants.ROOT_LRLAT;
+        double width = mapWidth / 4;
+        double height = width * 0.7 * mapHeight / mapWidth;
+        double ullon = Constants.ROOT_ULLON + mapWidth / 3;
+        double ullat = Constants.ROOT_ULLAT - mapHeight / 3;
+        List<String> traffic = new ArrayList<>();
+        for (int i = 0; i < SYNTHETIC_REQUESTS; i += 1) {
+            if (i % 25 == 24) {
+                traffic.add(String.format(Locale.ROOT,
+                        "route?start_lon=%.6f&start_lat=%.6f&end_lon=%.6f&end_lat=%.6f",
+                        ullon + r.nextDouble() * width, ullat - r.nextDouble() * height,
+                        ullon + r.nextDouble() * width, ullat - r.nextDouble() * height));
+            } else if (i % 10 == 9) {
+                String term = "" + (char) ('a' + r.nextInt(26)) + (char) ('a' + r.nextInt(26));
+                traffic.add("search?term=" + term + "&limit=10");
+            } else {
+                int move = r.nextInt(6);
+                if (move == 4 && width > mapWidth / 128) {
+                    ullon += width / 4;
+                    ullat -= height / 4;
+                    width /= 2;
+                    height /= 2;
+                } else if (move == 5 && width < mapWidth / 2) {
+                    ullon -= width / 2;
+                    ullat += height / 2;
+                    width *= 2;
+                    height *= 2;
+                } else {
+                    ullon += (r.nextInt(3) - 1) * width / 3;
+                    ullat += (r.nextInt(3) - 1) * height / 3;
+                }
+                // Keep the viewport on the map.
+                ullon = Math.max(Constants.ROOT_ULLON, Math.min(ullon, Constants.ROOT_LRLON - width));
+                ullat = Math.min(Constants.ROOT_ULLAT, Math.max(ullat, Constants.ROOT_LRLAT + height));
+                traffic.add(String.format(Locale.ROOT,
+                        "raster?ullon=%.6f&ullat=%.6f&lrlon=%.6f&lrlat=%.6f&w=1000&h=700",
+                        ullon, ullat, ullon + width, ullat - height));
+            }
+        }
+        return traffic;
+    }
+}
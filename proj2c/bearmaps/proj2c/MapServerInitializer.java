@@ -1,11 +1,22 @@
 package bearmaps.proj2c;
 
+import bearmaps.proj2c.server.VirtualThreadPool;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.server.handler.ThrottledRoute;
 import bearmaps.proj2c.utils.Constants;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.Route;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 import static spark.Spark.*;
 
@@ -17,9 +28,30 @@ public class MapServerInitializer {
      * Place any initialization statements that will be run before the server main loop here.
      * Do not place it in the main function. Do not place initialization code anywhere else.
      **/
-    public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
+    public static void initializeServer(Map<String, ? extends APIRouteHandler<?, ?>> apiHandlers){
+        initializeServer(apiHandlers, Constants.SERVER_PORT, Constants.HANDLER_EXECUTOR);
+    }
+
+    /**
+     * Starts the server on PORT. If USEEXECUTOR, Jetty takes requests on the
+     * pool of handlerThreadPool, otherwise on its own pool of JETTY_THREADS.
+     * Either way raster, routing and search requests are limited to
+     * RASTER_CONCURRENCY, ROUTE_CONCURRENCY and SEARCH_CONCURRENCY at once.
+     */
+    public static void initializeServer(Map<String, ? extends APIRouteHandler<?, ?>> apiHandlers,
+                                        int port, boolean useExecutor) {
 
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        if (Constants.SEMANTIC_STREET_GRAPH == null) {
+            Constants.SEMANTIC_STREET_GRAPH = GraphSnapshot.load(Constants.OSM_DB_PATH,
+                    Constants.SNAPSHOT_PATH);
+        }
+        port(port);
+        if (useExecutor) {
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                    new EmbeddedJettyFactory().withThreadPool(handlerThreadPool()));
+        } else {
+            threadPool(Constants.JETTY_THREADS);
+        }
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
@@ -28,16 +60,84 @@ public class MapServerInitializer {
             response.header("Access-Control-Request-Method", "*");
             response.header("Access-Control-Allow-Headers", "*");
         });
+        if (Constants.TRAFFIC_LOG_PATH != null) {
+            recordTraffic(Constants.TRAFFIC_LOG_PATH, apiHandlers.keySet());
+        }
+
+        Semaphore rasterPermits = new Semaphore(Constants.RASTER_CONCURRENCY, true);
+        Semaphore routePermits = new Semaphore(Constants.ROUTE_CONCURRENCY, true);
+        Semaphore searchPermits = new Semaphore(Constants.SEARCH_CONCURRENCY, true);
 
         Set<String> paths = new HashSet<>();
-        for(Map.Entry<String, APIRouteHandler> apiRoute: apiHandlers.entrySet()){
+        for(Map.Entry<String, ? extends APIRouteHandler<?, ?>> apiRoute: apiHandlers.entrySet()){
             if(paths.contains(apiRoute.getKey())){
                 throw new RuntimeException("Duplicate API Path found");
             }
-            get("/"+apiRoute.getKey(), apiRoute.getValue());
+            Route route = apiRoute.getValue();
+            switch (apiRoute.getKey()) {
+                case "raster":
+                case "raster_png":
+                    route = new ThrottledRoute(route, rasterPermits,
+                            Constants.REQUEST_QUEUE_TIMEOUT_MS);
+                    break;
+                case "route":
+                case "clear_route":
+                case "distance_matrix":
+                case "isochrone":
+                    route = new ThrottledRoute(route, routePermits,
+                            Constants.REQUEST_QUEUE_TIMEOUT_MS);
+                    break;
+                case "search":
+                    route = new ThrottledRoute(route, searchPermits,
+                            Constants.REQUEST_QUEUE_TIMEOUT_MS);
+                    break;
+                default:
+                    break;
+            }
+            get("/"+apiRoute.getKey(), route);
             paths.add(apiRoute.getKey());
         }
 
 
     }
+
+    /**
+     * Returns the thread pool Jetty takes requests on when handlers run on an
+     * executor: a virtual thread per request on Java 21 and up, otherwise a
+     * ThreadPoolExecutor of HANDLER_THREADS threads.
+     */
+    private static ThreadPool handlerThreadPool() {
+        if (VirtualThreadPool.isSupported()) {
+            return new VirtualThreadPool();
+        }
+        return new ExecutorThreadPool(Constants.HANDLER_THREADS);
+    }
+
+    /**
+     * Appends every request to one of the API PATHS to the file LOGPATH, one
+     * per line. The file is closed when the JVM shuts down.
+     */
+    private static void recordTraffic(String logPath, Set<String> apiPaths) {
+        PrintWriter log;
+        try {
+            log = new PrintWriter(new FileWriter(logPath, true), true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (log) {
+                log.close();
+            }
+        }));
+        after((request, response) -> {
+            String path = request.pathInfo().substring(1);
+            if (!path.isEmpty() && apiPaths.contains(path)) {
+                String query = request.queryString();
+                synchronized (log) {
+                    log.println(query == null ? path : path + "?" + query);
+                }
+            }
+        });
+    }
 }
@@ -0,0 +1,197 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The location names of a graph, each stored once. Every distinct raw name
+ * and every distinct cleaned name gets an int id, and each vertex records
+ * the id of its raw name and of its cleaned name.
+ *
+ * The vertices with a given cleaned name, and the raw names that clean to
+ * it, are kept in compressed rows like the edges of CompactStreetMapGraph:
+ * those of cleaned name c are vertex(i) for begin(c) <= i < end(c), and
+ * rawName(i) for rawBegin(c) <= i < rawEnd(c). Looking names up and
+ * walking their vertices allocates nothing.
+ *
+ * Since cleaning is a function, raw names with different cleaned names are
+ * different, so the raw names of several cleaned names never repeat.
+ */
+public class NameTable {
+    private final String[] rawNames;
+    private final String[] cleanedNames;
+    private final Map<String, Integer> cleanedIDs;
+
+    private final int[] rawNameOfVertex;
+    private final int[] cleanedNameOfVertex;
+
+    private final int[] vertexStart;
+    private final int[] vertices;
+    private final int[] rawStart;
+    private final int[] raws;
+
+    /**
+     * Indexes NAMES, where names[v] is the raw name of vertex v, or null if v
+     * has no name.
+     */
+    public NameTable(String[] names) {
+        int n = names.length;
+        Map<String, Integer> rawIDs = new HashMap<>();
+        List<String> rawList = new ArrayList<>();
+        List<Integer> cleanedOfRaw = new ArrayList<>();
+        List<String> cleanedList = new ArrayList<>();
+        cleanedIDs = new HashMap<>();
+        rawNameOfVertex = new int[n];
+        cleanedNameOfVertex = new int[n];
+
+        for (int v = 0; v < n; v += 1) {
+            if (names[v] == null) {
+                rawNameOfVertex[v] = -1;
+                cleanedNameOfVertex[v] = -1;
+                continue;
+            }
+            Integer raw = rawIDs.get(names[v]);
+            if (raw == null) {
+                raw = rawList.size();
+                rawIDs.put(names[v], raw);
+                rawList.add(names[v]);
+                String cleaned = clean(names[v]);
+                Integer c = cleanedIDs.get(cleaned);
+                if (c == null) {
+                    c = cleanedList.size();
+                    cleanedIDs.put(cleaned, c);
+                    cleanedList.add(cleaned);
+                }
+                cleanedOfRaw.add(c);
+            }
+            rawNameOfVertex[v] = raw;
+            cleanedNameOfVertex[v] = cleanedOfRaw.get(raw);
+        }
+        rawNames = rawList.toArray(new String[0]);
+        cleanedNames = cleanedList.toArray(new String[0]);
+
+        // Count, prefix sum, scatter; vertices stay in increasing order within a row.
+        int m = cleanedNames.length;
+        vertexStart = new int[m + 1];
+        rawStart = new int[m + 1];
+        for (int v = 0; v < n; v += 1) {
+            if (cleanedNameOfVertex[v] >= 0) {
+                vertexStart[cleanedNameOfVertex[v] + 1] += 1;
+            }
+        }
+        for (int raw = 0; raw < rawNames.length; raw += 1) {
+            rawStart[cleanedOfRaw.get(raw) + 1] += 1;
+        }
+        for (int c = 0; c < m; c += 1) {
+            vertexStart[c + 1] += vertexStart[c];
+            rawStart[c + 1] += rawStart[c];
+        }
+        vertices = new int[vertexStart[m]];
+        raws = new int[rawStart[m]];
+        int[] next = new int[m];
+        for (int v = 0; v < n; v += 1) {
+            int c = cleanedNameOfVertex[v];
+            if (c >= 0) {
+                vertices[vertexStart[c] + next[c]] = v;
+                next[c] += 1;
+            }
+        }
+        next = new int[m];
+        for (int raw = 0; raw < rawNames.length; raw += 1) {
+            int c = cleanedOfRaw.get(raw);
+            raws[rawStart[c] + next[c]] = raw;
+            next[c] += 1;
+        }
+    }
+
+    /**
+     * Returns S with everything but ASCII letters and spaces removed, in
+     * lower case. This is s.replaceAll("[^a-zA-Z ]", "").toLowerCase() as a
+     * single scan, and returns S itself if it is already clean.
+     */
+    public static String clean(String s) {
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c == ' ')) {
+                break;
+            }
+            i += 1;
+        }
+        if (i == n) {
+            return s;
+        }
+        StringBuilder cleaned = new StringBuilder(n);
+        cleaned.append(s, 0, i);
+        for (; i < n; i += 1) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z' || c == ' ') {
+                cleaned.append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                cleaned.append((char) (c + ('a' - 'A')));
+            }
+        }
+        return cleaned.toString();
+    }
+
+    /** Returns the number of distinct cleaned names. */
+    public int size() {
+        return cleanedNames.length;
+    }
+
+    /** Returns the id of the cleaned name CLEANEDNAME, or -1 if no vertex has it. */
+    public int idOf(String cleanedName) {
+        Integer c = cleanedIDs.get(cleanedName);
+        return c == null ? -1 : c;
+    }
+
+    /** Returns the cleaned name with id C. */
+    public String cleanedName(int c) {
+        return cleanedNames[c];
+    }
+
+    /** Returns the id of the cleaned name of vertex V, or -1 if V has no name. */
+    public int cleanedNameOf(int v) {
+        return cleanedNameOfVertex[v];
+    }
+
+    /** Returns the raw name of vertex V, or null if it has none. */
+    public String rawNameOf(int v) {
+        int raw = rawNameOfVertex[v];
+        return raw < 0 ? null : rawNames[raw];
+    }
+
+    /** Returns the number of vertices with cleaned name C. */
+    public int count(int c) {
+        return vertexStart[c + 1] - vertexStart[c];
+    }
+
+    public int begin(int c) {
+        return vertexStart[c];
+    }
+
+    public int end(int c) {
+        return vertexStart[c + 1];
+    }
+
+    /** Returns the I-th vertex of the rows; vertices with the same cleaned name are in increasing order. */
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    public int rawBegin(int c) {
+        return rawStart[c];
+    }
+
+    public int rawEnd(int c) {
+        return rawStart[c + 1];
+    }
+
+    /** Returns the I-th raw name of the rows. */
+    public String rawName(int i) {
+        return rawNames[raws[i]];
+    }
+}
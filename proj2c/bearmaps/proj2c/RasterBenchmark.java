@@ -0,0 +1,84 @@
+package bearmaps.proj2c;
+
+import bearmaps.proj2c.utils.Constants;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Times putting viewports of cached tiles together and encoding them, the
+ * old way, drawing each tile and writing the image with ImageIO, and with
+ * TileCache.composite and each RasterEncoder setting. Prints the mean time
+ * and size of the image for each viewport size.
+ *
+ * Usage: RasterBenchmark [IMG_ROOT [DEPTH]]
+ *   IMG_ROOT is the folder of tiles, Constants.IMG_ROOT by default. DEPTH
+ *   is the depth whose tiles are used, 3 by default; it needs at least 8 by
+ *   6 tiles.
+ */
+public class RasterBenchmark {
+    private static final int TRIALS = 5;
+    private static final int[][] VIEWPORTS = {{2, 2}, {4, 3}, {6, 4}, {8, 6}};
+
+    public static void main(String[] args) throws Exception {
+        String imgRoot = args.length > 0 ? args[0] : Constants.IMG_ROOT;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int tileSize = Constants.TILE_SIZE;
+
+        TileCache tiles = new TileCache(imgRoot, tileSize, 100L << 20, false);
+        tiles.composite(depth, 0, 0, 8, 6);
+        RasterEncoder[] encoders = {
+            new RasterEncoder(RasterEncoder.Format.PNG, 1, 0.85f, Long.MAX_VALUE),
+            new RasterEncoder(RasterEncoder.Format.PNG, 0, 0.85f, Long.MAX_VALUE),
+            new RasterEncoder(RasterEncoder.Format.JPEG, 1, 0.85f, Long.MAX_VALUE),
+        };
+        String[] names = {"png level 1", "png stored", "jpeg 0.85"};
+        // Warm up the JIT on both pipelines.
+        for (int i = 0; i < TRIALS; i += 1) {
+            ImageIO.write(drawTiles(tiles, depth, 4, 4, tileSize), "png", new ByteArrayOutputStream());
+            for (RasterEncoder encoder : encoders) {
+                encoder.write(tiles.composite(depth, 0, 0, 4, 4), new ByteArrayOutputStream());
+            }
+        }
+        for (int[] viewport : VIEWPORTS) {
+            int cols = viewport[0];
+            int rows = viewport[1];
+            System.out.println(cols + "x" + rows + " tiles:");
+            long start = System.nanoTime();
+            int size = 0;
+            for (int i = 0; i < TRIALS; i += 1) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                ImageIO.write(drawTiles(tiles, depth, cols, rows, tileSize), "png", os);
+                size = os.size();
+            }
+            System.out.printf("  drawImage + ImageIO.write: %7.1fms %8dKB%n",
+                    (System.nanoTime() - start) / 1e6 / TRIALS, size / 1024);
+            for (int e = 0; e < encoders.length; e += 1) {
+                start = System.nanoTime();
+                for (int i = 0; i < TRIALS; i += 1) {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    encoders[e].write(tiles.composite(depth, 0, 0, cols, rows), os);
+                    size = os.size();
+                }
+                System.out.printf("  composite + %-13s: %7.1fms %8dKB%n", names[e],
+                        (System.nanoTime() - start) / 1e6 / TRIALS, size / 1024);
+            }
+        }
+    }
+
+    /** Draws the upper left COLS by ROWS tiles at DEPTH one at a time, as RasterAPIHandler used to. */
+    private static BufferedImage drawTiles(TileCache tiles, int depth, int cols, int rows, int tileSize) {
+        BufferedImage img = new BufferedImage(cols * tileSize, rows * tileSize,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = img.getGraphics();
+        for (int row = 0; row < rows; row += 1) {
+            for (int col = 0; col < cols; col += 1) {
+                g.drawImage(tiles.get(depth, col, row), col * tileSize, row * tileSize, null);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+}
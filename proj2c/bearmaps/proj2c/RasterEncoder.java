@@ -0,0 +1,215 @@
+package bearmaps.proj2c;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes finished rasters, which takes most of the time of a raster request.
+ *
+ * ImageIO's PNG writer tries all five PNG filters on every row to pick the
+ * one that compresses best, then deflates at a middle level. TYPE_INT_RGB
+ * images, which every raster is, are instead written here with the Sub
+ * filter on every row, which suits the flat colors of map tiles, and a
+ * configurable deflate level: a low level is much faster for a somewhat
+ * larger image, and level 0 just stores the pixels. JPEG is lossy, so it is
+ * used either for every raster or only for those of at least jpegMinPixels
+ * pixels, where the size of a PNG would hurt the most.
+ */
+public class RasterEncoder {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int FILTER_SUB = 1;
+    /** The largest IDAT chunk written. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    public enum Format {
+        PNG("png", "image/png"), JPEG("jpeg", "image/jpeg");
+
+        private final String formatName;
+        private final String mimeType;
+
+        Format(String formatName, String mimeType) {
+            this.formatName = formatName;
+            this.mimeType = mimeType;
+        }
+
+        public String mimeType() {
+            return mimeType;
+        }
+    }
+
+    private final Format format;
+    private final int deflateLevel;
+    private final float jpegQuality;
+    private final long jpegMinPixels;
+
+    /**
+     * An encoder writing FORMAT, with PNGs compressed at DEFLATELEVEL, from 0
+     * to 9, and JPEGs at JPEGQUALITY, from 0 to 1. PNG rasters of at least
+     * JPEGMINPIXELS pixels are written as JPEG instead.
+     */
+    public RasterEncoder(Format format, int deflateLevel, float jpegQuality, long jpegMinPixels) {
+        if (deflateLevel < 0 || deflateLevel > 9) {
+            throw new IllegalArgumentException("Deflate level " + deflateLevel + " is not in [0, 9]");
+        }
+        if (jpegQuality < 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("JPEG quality " + jpegQuality + " is not in [0, 1]");
+        }
+        this.format = format;
+        this.deflateLevel = deflateLevel;
+        this.jpegQuality = jpegQuality;
+        this.jpegMinPixels = jpegMinPixels;
+    }
+
+    /** Returns the format IMG is written in. */
+    public Format formatOf(BufferedImage img) {
+        if (format == Format.JPEG || (long) img.getWidth() * img.getHeight() >= jpegMinPixels) {
+            return Format.JPEG;
+        }
+        return Format.PNG;
+    }
+
+    /** Writes IMG to OS, and returns the format it was written in. */
+    public Format write(BufferedImage img, OutputStream os) throws IOException {
+        Format f = formatOf(img);
+        if (f == Format.PNG && img.getType() == BufferedImage.TYPE_INT_RGB
+                && img.getRaster().getDataBuffer().getSize() == img.getWidth() * img.getHeight()) {
+            writePng(img, os);
+            return f;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(f.formatName).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        if (f == Format.JPEG) {
+            param.setCompressionQuality(jpegQuality);
+        } else {
+            // The PNG writer uses deflate level 9 - round(9 * quality).
+            param.setCompressionQuality(1 - deflateLevel / 9f);
+        }
+        // ImageIO.createImageOutputStream would buffer through a temporary file.
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(os)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return f;
+    }
+
+    /** Writes IMG, a TYPE_INT_RGB image that is not a subimage, as a PNG to OS. */
+    private void writePng(BufferedImage img, OutputStream os) throws IOException {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        DataOutputStream out = new DataOutputStream(os);
+        out.write(PNG_SIGNATURE);
+
+        // Width, height, 8 bits per channel, RGB, deflate, adaptive filters, no interlacing.
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        writeChunk(out, "IHDR", header, header.length);
+
+        Deflater deflater = new Deflater(deflateLevel);
+        IdatOutputStream idat = new IdatOutputStream(out);
+        try (DeflaterOutputStream z = new DeflaterOutputStream(idat, deflater, CHUNK_SIZE)) {
+            byte[] row = new byte[1 + 3 * width];
+            row[0] = FILTER_SUB;
+            for (int y = 0; y < height; y += 1) {
+                // Each byte less the same channel of the pixel to its left.
+                int prev = 0;
+                for (int x = 0, i = y * width, j = 1; x < width; x += 1, i += 1, j += 3) {
+                    int p = pixels[i];
+                    row[j] = (byte) ((p >> 16) - (prev >> 16));
+                    row[j + 1] = (byte) ((p >> 8) - (prev >> 8));
+                    row[j + 2] = (byte) (p - prev);
+                    prev = p;
+                }
+                z.write(row);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", header, 0);
+        out.flush();
+    }
+
+    private static void putInt(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+    }
+
+    /** Writes the first LENGTH bytes of DATA to OUT as a chunk of type TYPE. */
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /** Cuts the deflated pixels written to it into IDAT chunks of at most CHUNK_SIZE bytes. */
+    private static class IdatOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size;
+
+        IdatOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - size);
+                System.arraycopy(b, off, buffer, size, n);
+                size += n;
+                off += n;
+                len -= n;
+                if (size == CHUNK_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        /** Writes the buffered bytes as one chunk. */
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk(out, "IDAT", buffer, size);
+                size = 0;
+            }
+        }
+
+        /** Writes the last chunk, leaving OUT open for the IEND chunk. */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
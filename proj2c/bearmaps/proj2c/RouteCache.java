@@ -0,0 +1,162 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.utils.LruCache;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recently found routes of a graph, keyed by their start and end vertices,
+ * so that popular trips skip both the search and building the directions.
+ * The cache is bounded by the approximate size of the routes in bytes.
+ *
+ * Every solver Router runs finds a shortest path, so a route is reused
+ * whichever algorithm is asked for. Two threads missing the same trip at
+ * once both search for it; the second simply replaces the first.
+ */
+public class RouteCache {
+    /** A cached route: its vertex ids, its length and its directions. */
+    public static final class CachedRoute {
+        private final long[] path;
+        private final double weight;
+        private final List<Router.NavigationDirection> directions;
+
+        private CachedRoute(long[] path, double weight, List<Router.NavigationDirection> directions) {
+            this.path = path;
+            this.weight = weight;
+            this.directions = Collections.unmodifiableList(directions);
+        }
+
+        /** Returns the ids of the route as an unmodifiable list. */
+        public List<Long> path() {
+            return new AbstractList<Long>() {
+                @Override
+                public Long get(int i) {
+                    return path[i];
+                }
+
+                @Override
+                public int size() {
+                    return path.length;
+                }
+            };
+        }
+
+        /** Returns whether ROUTE is the same sequence of vertices as this route. */
+        boolean samePath(List<Long> route) {
+            if (route.size() != path.length) {
+                return false;
+            }
+            int i = 0;
+            for (long id : route) {
+                if (id != path[i]) {
+                    return false;
+                }
+                i += 1;
+            }
+            return true;
+        }
+
+        public double weight() {
+            return weight;
+        }
+
+        public List<Router.NavigationDirection> directions() {
+            return directions;
+        }
+
+        /* Rough bytes held: the arrays and lists, and a direction object each. */
+        private long bytes() {
+            return 64 + 8L * path.length + 64L * directions.size();
+        }
+    }
+
+    private final CompactStreetMapGraph graph;
+    private final LruCache<Long, CachedRoute> routes;
+
+    /** A cache of routes on G holding about CAPACITYBYTES of them. */
+    public RouteCache(CompactStreetMapGraph g, long capacityBytes) {
+        this.graph = g;
+        this.routes = new LruCache<>(capacityBytes, CachedRoute::bytes);
+    }
+
+    /**
+     * Returns the route from SRC to DEST on G, searching with ALGORITHM and
+     * building its directions only if it is not cached.
+     */
+    public CachedRoute route(AugmentedStreetMapGraph g, long src, long dest, Router.Algorithm algorithm) {
+        Long key = key(graph.indexOf(src), graph.indexOf(dest));
+        CachedRoute route = routes.get(key);
+        if (route == null) {
+            ShortestPathsSolver<Long> solver = Router.solve(g, src, dest, algorithm);
+            List<Long> solution = solver.solution();
+            long[] path = solution.stream().mapToLong(Long::longValue).toArray();
+            route = new CachedRoute(path, solver.solutionWeight(),
+                    Router.computeDirections(g, solution));
+            routes.put(key, route);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the cached route with the same vertices as ROUTE, or null if
+     * there is none. These lookups do not count as hits or misses.
+     */
+    CachedRoute lookup(List<Long> route) {
+        if (route.size() < 2) {
+            return null;
+        }
+        int src = graph.indexOf(route.get(0));
+        int dest = graph.indexOf(route.get(route.size() - 1));
+        if (src < 0 || dest < 0) {
+            return null;
+        }
+        CachedRoute cached = routes.peek(key(src, dest));
+        return cached != null && cached.samePath(route) ? cached : null;
+    }
+
+    /* Packs the vertex indices SRC and DEST into one key. */
+    private static Long key(int src, int dest) {
+        return ((long) src << 32) | dest;
+    }
+
+    public void clear() {
+        routes.clear();
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    /** Returns the approximate bytes of the cached routes. */
+    public long weight() {
+        return routes.weight();
+    }
+
+    public long hits() {
+        return routes.hits();
+    }
+
+    public long misses() {
+        return routes.misses();
+    }
+
+    /** Returns the fraction of route lookups that were cached, or 0 before the first. */
+    public double hitRatio() {
+        long hits = routes.hits();
+        long lookups = hits + routes.misses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public long evictions() {
+        return routes.evictions();
+    }
+
+    @Override
+    public String toString() {
+        return "Route cache: " + routes;
+    }
+}
@@ -0,0 +1,119 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+
+import java.util.Arrays;
+
+/**
+ * The polyline of a route, for drawing it over rasters. The coordinates of
+ * its points are looked up once, into primitive arrays, and its segments are
+ * indexed by a tree of bounding boxes: node 1 is the root, the children of
+ * node i are 2i and 2i + 1, and leaf size + s is segment s, from point s to
+ * point s + 1. The box of a node bounds all the segments below it.
+ *
+ * forEachSegmentIn then only descends into nodes whose box meets the
+ * viewport, so drawing a route costs time proportional to its visible part,
+ * plus a logarithmic factor, however long the route is.
+ */
+public class RouteGeometry {
+    private final double[] lons;
+    private final double[] lats;
+
+    /** The number of leaves, a power of two at least the number of segments. */
+    private final int size;
+    private final double[] minLon;
+    private final double[] maxLon;
+    private final double[] minLat;
+    private final double[] maxLat;
+
+    /** Called with the endpoints of each segment found. */
+    public interface SegmentVisitor {
+        void visit(double lon1, double lat1, double lon2, double lat2);
+    }
+
+    /** The geometry of ROUTE, a list of vertex ids of G. */
+    public RouteGeometry(CompactStreetMapGraph g, long[] route) {
+        int n = route.length;
+        lons = new double[n];
+        lats = new double[n];
+        for (int i = 0; i < n; i += 1) {
+            int v = g.indexOf(route[i]);
+            if (v < 0) {
+                throw new IllegalArgumentException("No vertex with id " + route[i]);
+            }
+            lons[i] = g.lon(v);
+            lats[i] = g.lat(v);
+        }
+
+        int segments = Math.max(0, n - 1);
+        int leaves = 1;
+        while (leaves < segments) {
+            leaves *= 2;
+        }
+        size = leaves;
+        minLon = new double[2 * size];
+        maxLon = new double[2 * size];
+        minLat = new double[2 * size];
+        maxLat = new double[2 * size];
+        // Empty leaves get inverted boxes, which meet nothing.
+        Arrays.fill(minLon, Double.POSITIVE_INFINITY);
+        Arrays.fill(minLat, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxLon, Double.NEGATIVE_INFINITY);
+        Arrays.fill(maxLat, Double.NEGATIVE_INFINITY);
+        for (int s = 0; s < segments; s += 1) {
+            int leaf = size + s;
+            minLon[leaf] = Math.min(lons[s], lons[s + 1]);
+            maxLon[leaf] = Math.max(lons[s], lons[s + 1]);
+            minLat[leaf] = Math.min(lats[s], lats[s + 1]);
+            maxLat[leaf] = Math.max(lats[s], lats[s + 1]);
+        }
+        for (int i = size - 1; i >= 1; i -= 1) {
+            minLon[i] = Math.min(minLon[2 * i], minLon[2 * i + 1]);
+            maxLon[i] = Math.max(maxLon[2 * i], maxLon[2 * i + 1]);
+            minLat[i] = Math.min(minLat[2 * i], minLat[2 * i + 1]);
+            maxLat[i] = Math.max(maxLat[2 * i], maxLat[2 * i + 1]);
+        }
+    }
+
+    /** Returns the number of points of the route. */
+    public int numPoints() {
+        return lons.length;
+    }
+
+    public double lon(int i) {
+        return lons[i];
+    }
+
+    public double lat(int i) {
+        return lats[i];
+    }
+
+    /**
+     * Calls VISITOR on every segment whose bounding box meets the box from
+     * (MINLON, MINLAT) to (MAXLON, MAXLAT), in route order.
+     */
+    public void forEachSegmentIn(double minLon, double minLat, double maxLon, double maxLat,
+                                 SegmentVisitor visitor) {
+        if (lons.length < 2) {
+            return;
+        }
+        // Depth-first, left child first; at most one right child per level waits on the stack.
+        int[] stack = new int[2 * Integer.numberOfTrailingZeros(size) + 2];
+        int top = 0;
+        stack[top++] = 1;
+        while (top > 0) {
+            int i = stack[--top];
+            if (this.minLon[i] > maxLon || this.maxLon[i] < minLon
+                    || this.minLat[i] > maxLat || this.maxLat[i] < minLat) {
+                continue;
+            }
+            if (i >= size) {
+                int s = i - size;
+                visitor.visit(lons[s], lats[s], lons[s + 1], lats[s + 1]);
+            } else {
+                stack[top++] = 2 * i + 1;
+                stack[top++] = 2 * i;
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import spark.Request;
+import spark.Response;
+
+import java.security.SecureRandom;
+import java.util.AbstractList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * The route of every client, so that concurrent users each see their own.
+ * A client is known by a session token, sent in the COOKIE cookie or, for
+ * clients without cookies, the PARAM query parameter; a client with
+ * neither is given a new token in a cookie.
+ *
+ * Routes are immutable: changing a route swaps in a new Route, so readers
+ * never see one half-changed. Changes, clears and sweeps of a session are
+ * serialized by the map, so none of them can undo another. Each route has a version, unique across all
+ * sessions except for the shared EMPTY route, to key cached rasters by.
+ *
+ * Sessions unused for longer than the TTL are dropped. There is no sweeper
+ * thread; every access sweeps the whole store if half a TTL has passed
+ * since the last sweep.
+ */
+public class RouteSessionStore {
+    public static final String COOKIE = "bearmaps_session";
+    public static final String PARAM = "session";
+
+    /**
+     * The route of a session, with its vertex ids and the geometry to draw
+     * it, and the isochrone drawn with it, if any.
+     */
+    public static final class Route {
+        private final long[] ids;
+        private final RouteGeometry geometry;
+        private final Isochrone isochrone;
+        private final long version;
+
+        private Route(long[] ids, RouteGeometry geometry, Isochrone isochrone, long version) {
+            this.ids = ids;
+            this.geometry = geometry;
+            this.isochrone = isochrone;
+            this.version = version;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public long id(int i) {
+            return ids[i];
+        }
+
+        /** Returns the ids of the route as an unmodifiable list. */
+        public List<Long> asList() {
+            return new AbstractList<Long>() {
+                @Override
+                public Long get(int i) {
+                    return ids[i];
+                }
+
+                @Override
+                public int size() {
+                    return ids.length;
+                }
+            };
+        }
+
+        /** Returns the geometry of the route, or null if it has no segments. */
+        public RouteGeometry geometry() {
+            return geometry;
+        }
+
+        /** Returns the isochrone of the session, or null if it has none. */
+        public Isochrone isochrone() {
+            return isochrone;
+        }
+
+        public long version() {
+            return version;
+        }
+    }
+
+    /** The route of a session without one. */
+    public static final Route EMPTY = new Route(new long[0], null, null, 0);
+
+    private static final class Session {
+        private volatile Route route = EMPTY;
+        private volatile long lastAccess;
+
+        private Session(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweep;
+    private final AtomicLong versions = new AtomicLong();
+    private final SecureRandom random = new SecureRandom();
+
+    /** A store dropping sessions unused for TTLMILLIS milliseconds. */
+    public RouteSessionStore(long ttlMillis) {
+        this(ttlMillis, System::currentTimeMillis);
+    }
+
+    /** A store dropping sessions unused for TTLMILLIS, as measured by CLOCK in milliseconds. */
+    public RouteSessionStore(long ttlMillis, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Returns the session token of REQUEST, from its cookie or query
+     * parameter. If it has neither, a new token is made and set as a cookie
+     * on RESPONSE.
+     */
+    public String token(Request request, Response response) {
+        String token = request.cookie(COOKIE);
+        if (token == null || token.isEmpty()) {
+            token = request.queryParams(PARAM);
+        }
+        if (token == null || token.isEmpty()) {
+            byte[] bytes = new byte[16];
+            random.nextBytes(bytes);
+            token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            response.cookie("/", COOKIE, token, -1, false);
+        }
+        return token;
+    }
+
+    /** Returns the route of session TOKEN, or EMPTY if it has none. */
+    public Route route(String token) {
+        sweepIfDue();
+        Session session = sessions.get(token);
+        if (session == null) {
+            return EMPTY;
+        }
+        session.lastAccess = clock.getAsLong();
+        return session.route;
+    }
+
+    /**
+     * Adds PATH, vertex ids of G, to the end of the route of session TOKEN
+     * and returns the new route.
+     */
+    public Route append(String token, long[] path, CompactStreetMapGraph g) {
+        return update(token, old -> {
+            long[] ids = new long[old.ids.length + path.length];
+            System.arraycopy(old.ids, 0, ids, 0, old.ids.length);
+            System.arraycopy(path, 0, ids, old.ids.length, path.length);
+            RouteGeometry geometry = ids.length < 2 ? null : new RouteGeometry(g, ids);
+            return new Route(ids, geometry, old.isochrone, versions.incrementAndGet());
+        });
+    }
+
+    /**
+     * Replaces the isochrone of session TOKEN with ISOCHRONE, keeping its
+     * route, and returns the new route.
+     */
+    public Route setIsochrone(String token, Isochrone isochrone) {
+        return update(token, old -> new Route(old.ids, old.geometry, isochrone,
+                versions.incrementAndGet()));
+    }
+
+    /**
+     * Replaces the route of session TOKEN, starting the session if needed,
+     * with CHANGE applied to it, and returns the new route. The change runs
+     * inside sessions.compute, so it is atomic with clears, sweeps and other
+     * changes to the same session: none of them is lost or undone.
+     */
+    private Route update(String token, UnaryOperator<Route> change) {
+        sweepIfDue();
+        Route[] route = new Route[1];
+        sessions.compute(token, (t, s) -> {
+            Session updated = s == null ? new Session(clock.getAsLong()) : s;
+            route[0] = change.apply(updated.route);
+            updated.route = route[0];
+            updated.lastAccess = clock.getAsLong();
+            return updated;
+        });
+        return route[0];
+    }
+
+    /** Clears the route and isochrone of session TOKEN. */
+    public void clear(String token) {
+        sweepIfDue();
+        sessions.remove(token);
+    }
+
+    /** Returns the number of sessions. */
+    public int size() {
+        return sessions.size();
+    }
+
+    /** Drops every session unused for longer than the TTL. */
+    public void evictExpired() {
+        long now = clock.getAsLong();
+        lastSweep.set(now);
+        // Each removal rechecks the session under its lock, so a session
+        // changed since the check is kept.
+        for (String token : sessions.keySet()) {
+            sessions.computeIfPresent(token, (t, s) -> now - s.lastAccess > ttlMillis ? null : s);
+        }
+    }
+
+    private void sweepIfDue() {
+        long last = lastSweep.get();
+        if (clock.getAsLong() - last >= ttlMillis / 2 && lastSweep.compareAndSet(last, clock.getAsLong())) {
+            evictExpired();
+        }
+    }
+}
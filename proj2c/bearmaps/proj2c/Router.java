@@ -1,6 +1,11 @@
 package bearmaps.proj2c;
 
-import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.ch.CHSolver;
+import bearmaps.proj2c.utils.Constants;
 import bearmaps.hw4.WeightedEdge;
 
 import java.util.*;
@@ -9,22 +14,132 @@ import java.util.regex.Pattern;
 
 public class Router {
 
+    /** Seconds a single route search may run before it gives up. */
+    private static final double TIMEOUT = 20;
+
+    /** The shortest paths solvers shortestPath can run. */
+    public enum Algorithm {
+        ASTAR, ALT_ASTAR, BIDIRECTIONAL_ASTAR, CONTRACTION_HIERARCHY
+    }
+
+    /**
+     * Returns a List of longs representing the shortest path from the node
+     * closest to a start location and the node closest to the destination
+     * location, found with one-directional A*.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, Algorithm.ASTAR);
+    }
+
     /**
      * Overloaded method for shortestPath that has flexibility to specify a solver
      * and returns a List of longs representing the shortest path from the node
      * closest to a start location and the node closest to the destination location.
+     * Routes between the same pair of nodes are served from the route cache of
+     * the graph, with no search; the list returned is a copy the caller may
+     * change.
      * @param g The graph to use.
      * @param stlon The longitude of the start location.
      * @param stlat The latitude of the start location.
      * @param destlon The longitude of the destination location.
      * @param destlat The latitude of the destination location.
+     * @param algorithm The solver to run.
      * @return A list of node id's in the order visited on the shortest path.
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
-                                          double destlon, double destlat) {
+                                          double destlon, double destlat, Algorithm algorithm) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        return new ArrayList<>(g.routeCache().route(g, src, dest, algorithm).path());
+    }
+
+    /**
+     * Runs the given solver between two vertices of the graph. The returned
+     * solver also reports numStatesExplored and explorationTime, which is
+     * handy for comparing algorithms on the same query.
+     * @param g The graph to use.
+     * @param src The id of the start vertex.
+     * @param dest The id of the destination vertex.
+     * @param algorithm The solver to run.
+     * @return The finished solver.
+     */
+    public static ShortestPathsSolver<Long> solve(AugmentedStreetMapGraph g, long src, long dest,
+                                                  Algorithm algorithm) {
+        switch (algorithm) {
+            case CONTRACTION_HIERARCHY:
+                return new CHSolver(g.contractionHierarchy(Constants.CH_PATH), src, dest, TIMEOUT);
+            case ALT_ASTAR:
+                return new IntAStarSolver(g.landmarkGraph(Constants.LANDMARKS_PATH,
+                        Constants.NUM_LANDMARKS), src, dest, TIMEOUT);
+            case BIDIRECTIONAL_ASTAR:
+                return new BidirectionalAStarSolver(g.compactGraph(), src, dest, TIMEOUT);
+            case ASTAR:
+            default:
+                return new IntAStarSolver(g.compactGraph(), src, dest, TIMEOUT);
+        }
+    }
+
+    /**
+     * Returns the distances between every pair of the given points: entry
+     * [i][j] is the length of the shortest path from the node closest to
+     * point i to the node closest to point j, or infinity if there is none.
+     * @param g The graph to use.
+     * @param lons The longitudes of the points.
+     * @param lats The latitudes of the points.
+     * @return The distance matrix.
+     */
+    public static double[][] distanceMatrix(AugmentedStreetMapGraph g, double[] lons, double[] lats) {
+        int[] vertices = snap(g, lons, lats);
+        return DistanceMatrix.compute(g.compactGraph(), vertices, vertices);
+    }
+
+    /**
+     * Returns the distances from every source point to every destination
+     * point: entry [i][j] is the length of the shortest path from the node
+     * closest to source i to the node closest to destination j, or infinity
+     * if there is none. Each point is snapped once, and each source is one
+     * Dijkstra sweep; the sweeps run in parallel.
+     * @param g The graph to use.
+     * @param stlons The longitudes of the sources.
+     * @param stlats The latitudes of the sources.
+     * @param destlons The longitudes of the destinations.
+     * @param destlats The latitudes of the destinations.
+     * @return The distance matrix.
+     */
+    public static double[][] distanceMatrix(AugmentedStreetMapGraph g, double[] stlons, double[] stlats,
+                                            double[] destlons, double[] destlats) {
+        return DistanceMatrix.compute(g.compactGraph(), snap(g, stlons, stlats),
+                snap(g, destlons, destlats));
+    }
+
+    /**
+     * Returns the nodes within DISTANCE of the node closest to a location,
+     * with the convex hull around them.
+     * @param g The graph to use.
+     * @param lon The longitude of the location.
+     * @param lat The latitude of the location.
+     * @param distance The most distance to travel, in miles like the edge weights.
+     * @return The reached nodes and their hull.
+     */
+    public static Isochrone isochrone(AugmentedStreetMapGraph g, double lon, double lat, double distance) {
+        int source = g.compactGraph().indexOf(g.closest(lon, lat));
+        return Isochrone.compute(g.compactGraph(), source, distance);
+    }
+
+    /** Returns the compact graph indices of the nodes closest to each point. */
+    private static int[] snap(AugmentedStreetMapGraph g, double[] lons, double[] lats) {
+        int[] vertices = new int[lons.length];
+        for (int i = 0; i < lons.length; i += 1) {
+            vertices[i] = g.compactGraph().indexOf(g.closest(lons[i], lats[i]));
+        }
+        return vertices;
     }
 
     /**
@@ -33,9 +148,23 @@ public class Router {
      * @param route The route to translate into directions. Each element
      *              corresponds to a node from the graph in the route.
      * @return A list of NavigatiionDirection objects corresponding to the input
-     * route.
+     * route. For a route found by shortestPath, the list and its directions
+     * are copies of the cached ones.
      */
     public static List<NavigationDirection> routeDirections(AugmentedStreetMapGraph g, List<Long> route) {
+        RouteCache.CachedRoute cached = g.routeCache().lookup(route);
+        if (cached != null) {
+            List<NavigationDirection> copies = new ArrayList<>(cached.directions().size());
+            for (NavigationDirection d : cached.directions()) {
+                copies.add(setNaviDir(d.direction, d.way, d.distance));
+            }
+            return copies;
+        }
+        return computeDirections(g, route);
+    }
+
+    /** Builds the directions of ROUTE on G, for routeDirections and the route cache. */
+    static List<NavigationDirection> computeDirections(AugmentedStreetMapGraph g, List<Long> route) {
         /* fill in for part IV */
         double distOnPrevWay = 0;
         int prevDirToChange = 0; // Set default value to "Start".
@@ -0,0 +1,216 @@
+package bearmaps.proj2c;
+
+import bearmaps.proj2c.utils.LruCache;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Decoded map tiles, kept in an LruCache bounded by the bytes of their
+ * pixel data. Tile (depth, x, y) is the image dDEPTH_xX_yY.png in the
+ * image folder, as in the render grid of RasterAPIHandler.
+ *
+ * Tiles are kept as TYPE_INT_RGB, whatever their PNG type, so that composite
+ * can copy their pixels with System.arraycopy.
+ *
+ * A tile asked for by several threads at once is decoded once; the others
+ * wait for it. With prefetching on, a background thread decodes the ring of
+ * tiles around each rastered grid, so that panning by up to a tile finds
+ * its new edge already decoded.
+ */
+public class TileCache {
+    /** Most prefetches waiting at once; more are dropped, as the view has moved on. */
+    private static final int PREFETCH_QUEUE = 256;
+
+    private final String imgRoot;
+    private final int tileSize;
+    private final LruCache<Long, BufferedImage> cache;
+    private final ConcurrentHashMap<Long, CompletableFuture<BufferedImage>> loading =
+            new ConcurrentHashMap<>();
+    private final ExecutorService prefetcher;
+
+    /**
+     * A cache of the TILESIZE by TILESIZE tiles in the folder IMGROOT, using
+     * at most CAPACITYBYTES of decoded pixels, that prefetches neighboring
+     * tiles if PREFETCH.
+     */
+    public TileCache(String imgRoot, int tileSize, long capacityBytes, boolean prefetch) {
+        this.imgRoot = imgRoot;
+        this.tileSize = tileSize;
+        this.cache = new LruCache<>(capacityBytes, TileCache::bytes);
+        if (prefetch) {
+            prefetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(PREFETCH_QUEUE), r -> {
+                        Thread t = new Thread(r, "tile-prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.DiscardPolicy());
+        } else {
+            prefetcher = null;
+        }
+    }
+
+    /** Returns the key of tile (DEPTH, X, Y); x and y are below 2^depth <= 2^24. */
+    private static long key(int depth, int x, int y) {
+        return ((long) depth << 48) | ((long) x << 24) | y;
+    }
+
+    /** Returns the bytes of pixel data held by IMG. */
+    private static long bytes(BufferedImage img) {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /** Returns the file name of tile (DEPTH, X, Y). */
+    public static String fileName(int depth, int x, int y) {
+        return "d" + depth + "_x" + x + "_y" + y + ".png";
+    }
+
+    /** Returns tile (DEPTH, X, Y), decoding it if it is not cached, or null if it cannot be read. */
+    public BufferedImage get(int depth, int x, int y) {
+        long key = key(depth, x, y);
+        BufferedImage img = cache.get(key);
+        return img != null ? img : load(key, depth, x, y);
+    }
+
+    /** Decodes tile KEY, or waits for the thread already decoding it. */
+    private BufferedImage load(long key, int depth, int x, int y) {
+        CompletableFuture<BufferedImage> mine = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> theirs = loading.putIfAbsent(key, mine);
+        if (theirs != null) {
+            return theirs.join();
+        }
+        BufferedImage img = null;
+        try {
+            // Another thread may have finished decoding the tile between our
+            // cache miss and putIfAbsent; its miss has been counted already.
+            img = cache.peek(key);
+            if (img != null) {
+                return img;
+            }
+            img = ImageIO.read(new File(imgRoot + fileName(depth, x, y)));
+            if (img != null) {
+                img = toIntRGB(img);
+                cache.put(key, img);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            loading.remove(key);
+            mine.complete(img);
+        }
+        return img;
+    }
+
+    /** Returns IMG as a TYPE_INT_RGB image, drawing it into one unless it already is. */
+    private static BufferedImage toIntRGB(BufferedImage img) {
+        if (img.getType() == BufferedImage.TYPE_INT_RGB) {
+            return img;
+        }
+        BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = rgb.getGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    /**
+     * Returns the COLS by ROWS tiles at DEPTH whose upper left tile is
+     * (ULX, ULY), put together into one TYPE_INT_RGB image. Each row of tiles
+     * is filled in parallel, copying pixel rows straight into the image's
+     * int[] buffer; tiles that cannot be read are left black.
+     */
+    public BufferedImage composite(int depth, int ulx, int uly, int cols, int rows) {
+        int width = cols * tileSize;
+        BufferedImage img = new BufferedImage(width, rows * tileSize, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        IntStream.range(0, rows).parallel().forEach(r -> {
+            for (int c = 0; c < cols; c += 1) {
+                BufferedImage tile = get(depth, ulx + c, uly + r);
+                if (tile == null) {
+                    continue;
+                }
+                int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+                int tileWidth = tile.getWidth();
+                int copyWidth = Math.min(tileWidth, tileSize);
+                int copyHeight = Math.min(tile.getHeight(), tileSize);
+                int start = r * tileSize * width + c * tileSize;
+                for (int i = 0; i < copyHeight; i += 1) {
+                    System.arraycopy(tilePixels, i * tileWidth, pixels, start + i * width, copyWidth);
+                }
+            }
+        });
+        return img;
+    }
+
+    /**
+     * Queues the decoding of the tiles at DEPTH bordering the grid with
+     * corners (ULX, ULY) and (LRX, LRY), inclusive, that are not cached yet.
+     * Does nothing if prefetching is off.
+     */
+    public void prefetchRing(int depth, int ulx, int uly, int lrx, int lry) {
+        if (prefetcher == null) {
+            return;
+        }
+        int bound = 1 << depth;
+        for (int y = uly - 1; y <= lry + 1; y += 1) {
+            for (int x = ulx - 1; x <= lrx + 1; x += 1) {
+                boolean inside = x >= ulx && x <= lrx && y >= uly && y <= lry;
+                if (inside || x < 0 || y < 0 || x >= bound || y >= bound) {
+                    continue;
+                }
+                long key = key(depth, x, y);
+                if (cache.containsKey(key) || loading.containsKey(key)) {
+                    continue;
+                }
+                int tx = x, ty = y;
+                prefetcher.execute(() -> {
+                    if (!cache.containsKey(key)) {
+                        load(key, depth, tx, ty);
+                    }
+                });
+            }
+        }
+    }
+
+    /** Returns the number of cached tiles. */
+    public int size() {
+        return cache.size();
+    }
+
+    /** Returns the bytes of pixel data of the cached tiles. */
+    public long weight() {
+        return cache.weight();
+    }
+
+    public long hits() {
+        return cache.hits();
+    }
+
+    public long misses() {
+        return cache.misses();
+    }
+
+    public long evictions() {
+        return cache.evictions();
+    }
+
+    @Override
+    public String toString() {
+        return "TileCache: " + cache;
+    }
+}
@@ -0,0 +1,207 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index from the words of location names to the vertices that
+ * carry them, so that "coffee" finds "Peet's Coffee" and "telegraph" finds
+ * "2400 Telegraph". Names are expected to be cleaned already: lower case,
+ * with words separated by spaces.
+ *
+ * The words are kept sorted, each with a sorted int[] posting list of vertex
+ * indices. A query matches the vertices whose name contains all of its
+ * words. The lists are intersected smallest first, galloping through the
+ * longer list, so the cost depends mostly on the rarest word. The last word
+ * of a query is matched as a prefix, since the user may still be typing it,
+ * unless the query ends with a space.
+ */
+public class TokenIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final String[] tokens;
+    private final int[][] postings;
+
+    /**
+     * Indexes NAMES, where names[v] is the cleaned name of vertex v, or null
+     * if v has no name.
+     */
+    public TokenIndex(String[] names) {
+        Map<String, Integer> tokenIDs = new HashMap<>();
+        List<int[]> lists = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (int v = 0; v < names.length; v += 1) {
+            if (names[v] == null) {
+                continue;
+            }
+            for (String token : split(names[v])) {
+                Integer id = tokenIDs.get(token);
+                if (id == null) {
+                    id = lists.size();
+                    tokenIDs.put(token, id);
+                    lists.add(new int[4]);
+                    sizes.add(0);
+                }
+                int[] list = lists.get(id);
+                int size = sizes.get(id);
+                // Vertices come in increasing order, so a repeated word is the last entry.
+                if (size > 0 && list[size - 1] == v) {
+                    continue;
+                }
+                if (size == list.length) {
+                    list = Arrays.copyOf(list, size * 2);
+                    lists.set(id, list);
+                }
+                list[size] = v;
+                sizes.set(id, size + 1);
+            }
+        }
+
+        tokens = tokenIDs.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        postings = new int[tokens.length][];
+        for (int i = 0; i < tokens.length; i += 1) {
+            int id = tokenIDs.get(tokens[i]);
+            postings[i] = Arrays.copyOf(lists.get(id), sizes.get(id));
+        }
+    }
+
+    /** Returns the number of distinct words. */
+    public int numTokens() {
+        return tokens.length;
+    }
+
+    /**
+     * Returns the vertices whose name contains every word of the cleaned
+     * QUERY, in increasing order. The last word only has to start a word of
+     * the name, unless QUERY ends with a space.
+     */
+    public int[] search(String query) {
+        List<String> words = split(query);
+        if (words.isEmpty()) {
+            return EMPTY;
+        }
+        String prefix = null;
+        if (!query.endsWith(" ")) {
+            prefix = words.remove(words.size() - 1);
+        }
+
+        int[] result = null;
+        if (!words.isEmpty()) {
+            int[][] lists = new int[words.size()][];
+            for (int i = 0; i < lists.length; i += 1) {
+                int t = Arrays.binarySearch(tokens, words.get(i));
+                if (t < 0) {
+                    return EMPTY;
+                }
+                lists[i] = postings[t];
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+            result = lists[0];
+            for (int i = 1; i < lists.length && result.length > 0; i += 1) {
+                result = intersect(result, lists[i]);
+            }
+        }
+        if (prefix == null) {
+            return result;
+        }
+
+        // Every word that starts with the prefix, each narrowed down to the
+        // vertices that matched the other words, if there were any.
+        int lo = lowerBound(prefix);
+        int total = 0;
+        List<int[]> parts = new ArrayList<>();
+        for (int t = lo; t < tokens.length && tokens[t].startsWith(prefix); t += 1) {
+            int[] part = result == null ? postings[t] : intersect(result, postings[t]);
+            parts.add(part);
+            total += part.length;
+        }
+        return union(parts, total);
+    }
+
+    /** Returns the first word that is not less than PREFIX. */
+    private int lowerBound(String prefix) {
+        int t = Arrays.binarySearch(tokens, prefix);
+        return t >= 0 ? t : -t - 1;
+    }
+
+    private static List<String> split(String name) {
+        List<String> words = new ArrayList<>();
+        for (String word : name.split(" ")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /** Returns the sorted items that are in both sorted lists A and B. */
+    static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] temp = a;
+            a = b;
+            b = temp;
+        }
+        int[] result = new int[a.length];
+        int n = 0;
+        int j = 0;
+        for (int x : a) {
+            j = gallop(b, j, x);
+            if (j == b.length) {
+                break;
+            }
+            if (b[j] == x) {
+                result[n] = x;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the first index i >= FROM with b[i] >= X, or b.length if there
+     * is none. Probes FROM + 1, 2, 4, ... to bracket it, then binary searches
+     * the bracket, so a jump of d entries costs O(log d).
+     */
+    static int gallop(int[] b, int from, int x) {
+        if (from >= b.length || b[from] >= x) {
+            return from;
+        }
+        int lo = from;
+        int step = 1;
+        int hi = from + 1;
+        while (hi < b.length && b[hi] < x) {
+            lo = hi;
+            step <<= 1;
+            hi = lo + step;
+        }
+        hi = Math.min(hi, b.length);
+        int i = Arrays.binarySearch(b, lo + 1, hi, x);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /** Returns the sorted, distinct items of PARTS, which hold TOTAL items between them. */
+    private static int[] union(List<int[]> parts, int total) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int[] all = new int[total];
+        int n = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, all, n, part.length);
+            n += part.length;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int i = 0; i < all.length; i += 1) {
+            if (distinct == 0 || all[i] != all[distinct - 1]) {
+                all[distinct] = all[i];
+                distinct += 1;
+            }
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+}
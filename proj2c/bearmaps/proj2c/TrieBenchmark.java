@@ -0,0 +1,204 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.lab9.CompactTrieSet;
+import bearmaps.lab9.MyTrieSet;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures the tries that back location search on the names of a map: the
+ * memory and prefix search time of CompactTrieSet against MyTrieSet, and
+ * fuzzy search in CompactTrieSet against scanning every name.
+ *
+ * Usage: TrieBenchmark [OSM_FILE]
+ *   OSM_FILE is the map whose node and way names are used,
+ *   Constants.OSM_DB_PATH by default.
+ */
+public class TrieBenchmark {
+    private static final int FUZZY_QUERIES = 500;
+    private static final int MAX_DISTANCE = 2;
+    private static Random r = new Random(61);
+
+    public static void main(String[] args) {
+        List<String> names = mapNames(args.length > 0 ? args[0] : Constants.OSM_DB_PATH);
+        compareMemoryAndPrefixSearch(names);
+        compareFuzzySearch(names);
+    }
+
+    /** Compares the heap used by MyTrieSet and CompactTrieSet, and their prefix searches. */
+    private static void compareMemoryAndPrefixSearch(List<String> names) {
+        List<String> prefixes = new ArrayList<>(prefixes(names, 3));
+
+        long before = usedMemory();
+        MyTrieSet myTrie = new MyTrieSet();
+        for (String name : names) {
+            myTrie.add(name);
+        }
+        long myTrieBytes = usedMemory() - before;
+
+        before = usedMemory();
+        CompactTrieSet compactTrie = new CompactTrieSet();
+        for (String name : names) {
+            compactTrie.add(name);
+        }
+        compactTrie.trimToSize();
+        long compactTrieBytes = usedMemory() - before;
+
+        System.out.println(names.size() + " names. MyTrieSet: " + myTrieBytes / 1024
+                + " KB. CompactTrieSet: " + compactTrieBytes / 1024 + " KB, "
+                + compactTrie.capacity() + " slots.");
+
+        int matches = 0;
+        long start = System.currentTimeMillis();
+        for (String prefix : prefixes) {
+            matches += myTrie.keysWithPrefix(prefix).size();
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("MyTrieSet keysWithPrefix for " + prefixes.size() + " prefixes: "
+                + (end - start) / 1000.0 + " seconds.");
+
+        start = System.currentTimeMillis();
+        for (String prefix : prefixes) {
+            matches -= compactTrie.keysWithPrefix(prefix).size();
+        }
+        end = System.currentTimeMillis();
+        System.out.println("CompactTrieSet keysWithPrefix for " + prefixes.size() + " prefixes: "
+                + (end - start) / 1000.0 + " seconds.");
+        if (matches != 0) {
+            throw new IllegalStateException("The tries found different names.");
+        }
+    }
+
+    /** The heap in use, after a few rounds of collection. */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i += 1) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Every prefix of every key, up to MAXLENGTH characters, the only prefixes MyTrieSet accepts. */
+    private static Set<String> prefixes(List<String> keys, int maxLength) {
+        Set<String> prefixes = new HashSet<>();
+        for (String key : keys) {
+            for (int i = 1; i <= Math.min(maxLength, key.length()); i += 1) {
+                prefixes.add(key.substring(0, i));
+            }
+        }
+        return prefixes;
+    }
+
+    /** Times misspelled queries against CompactTrieSet.keysWithinDistance and a scan of NAMES. */
+    private static void compareFuzzySearch(List<String> names) {
+        CompactTrieSet trie = new CompactTrieSet();
+        for (String name : names) {
+            trie.add(name);
+        }
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < FUZZY_QUERIES; i += 1) {
+            queries.add(misspell(names.get(r.nextInt(names.size())), 1 + r.nextInt(MAX_DISTANCE)));
+        }
+
+        int matches = 0;
+        long start = System.currentTimeMillis();
+        for (String query : queries) {
+            matches += bruteForceWithinDistance(names, query, MAX_DISTANCE).size();
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Brute force fuzzy search of " + names.size() + " names, "
+                + queries.size() + " queries: " + (end - start) / 1000.0 + " seconds.");
+
+        start = System.currentTimeMillis();
+        for (String query : queries) {
+            matches -= trie.keysWithinDistance(query, MAX_DISTANCE).size();
+        }
+        end = System.currentTimeMillis();
+        System.out.println("Trie fuzzy search of " + names.size() + " names, "
+                + queries.size() + " queries: " + (end - start) / 1000.0 + " seconds.");
+        if (matches != 0) {
+            throw new IllegalStateException("The trie and the scan found different names.");
+        }
+    }
+
+    /** The lower-cased names of every node and way in the map at OSMPATH. */
+    private static List<String> mapNames(String osmPath) {
+        CompactStreetMapGraph g = new CompactStreetMapGraph(new StreetMapGraph(osmPath));
+        Set<String> names = new HashSet<>();
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            if (g.name(v) != null) {
+                names.add(g.name(v).toLowerCase());
+            }
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e += 1) {
+                if (g.edgeName(e) != null) {
+                    names.add(g.edgeName(e).toLowerCase());
+                }
+            }
+        }
+        names.remove("");
+        return new ArrayList<>(names);
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] prev = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j += 1) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i += 1) {
+            row[0] = i;
+            for (int j = 1; j <= b.length(); j += 1) {
+                int substitute = prev[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                row[j] = Math.min(substitute, Math.min(prev[j], row[j - 1]) + 1);
+            }
+            int[] temp = prev;
+            prev = row;
+            row = temp;
+        }
+        return prev[b.length()];
+    }
+
+    /** The names within MAXDISTANCE of QUERY, by scanning all of them. */
+    private static Set<String> bruteForceWithinDistance(List<String> names, String query,
+                                                        int maxDistance) {
+        Set<String> result = new HashSet<>();
+        for (String name : names) {
+            if (levenshtein(name, query) <= maxDistance) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Misspells WORD with up to EDITS random insertions, deletions and substitutions. */
+    private static String misspell(String word, int edits) {
+        StringBuilder typo = new StringBuilder(word);
+        for (int i = 0; i < edits; i += 1) {
+            int at = r.nextInt(typo.length() + 1);
+            char c = (char) ('a' + r.nextInt(26));
+            int kind = r.nextInt(3);
+            if (kind == 0 || typo.length() == 0) {
+                typo.insert(at, c);
+            } else if (at == typo.length()) {
+                typo.deleteCharAt(at - 1);
+            } else if (kind == 1) {
+                typo.deleteCharAt(at);
+            } else {
+                typo.setCharAt(at, c);
+            }
+        }
+        return typo.toString();
+    }
+}
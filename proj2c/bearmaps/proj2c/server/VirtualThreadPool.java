@@ -0,0 +1,88 @@
+package bearmaps.proj2c.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Jetty thread pool starting a virtual thread for every task, so that
+ * requests blocked on I/O or a concurrency limit hold no platform thread.
+ * Virtual threads arrived in Java 21; the tree targets Java 11, so the
+ * executor is looked up reflectively and isSupported says whether it exists.
+ *
+ * The pool is a Jetty LifeCycle, so the server stops it when it stops.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final ExecutorService executor;
+    private final AtomicInteger running = new AtomicInteger();
+
+    /** A pool of virtual threads; throws UnsupportedOperationException before Java 21. */
+    public VirtualThreadPool() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("No virtual threads on this JVM", e);
+        }
+    }
+
+    /** Returns whether this JVM has virtual threads. */
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        running.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            running.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        executor.shutdownNow();
+    }
+
+    /** Waits until the pool is stopped and its threads are done. */
+    @Override
+    public void join() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /** Returns the number of tasks running, one virtual thread each. */
+    @Override
+    public int getThreads() {
+        return running.get();
+    }
+
+    /** Virtual threads are started per task, so none is ever idle. */
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
@@ -8,13 +8,17 @@ import java.util.Map;
 
 public class APIRouteHandlerFactory {
 
-    public static final Map<String, APIRouteHandler> handlerMap;
+    public static final Map<String, APIRouteHandler<?, ?>> handlerMap;
 
     static {
         handlerMap = new HashMap<>();
-        handlerMap.put("raster", new RasterAPIHandler());
+        RasterAPIHandler rasterer = new RasterAPIHandler();
+        handlerMap.put("raster", rasterer);
+        handlerMap.put("raster_png", new RasterImageAPIHandler(rasterer));
         handlerMap.put("route", new RoutingAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
+        handlerMap.put("distance_matrix", new DistanceMatrixAPIHandler());
+        handlerMap.put("isochrone", new IsochroneAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
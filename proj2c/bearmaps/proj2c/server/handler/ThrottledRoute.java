@@ -0,0 +1,46 @@
+package bearmaps.proj2c.server.handler;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static spark.Spark.halt;
+
+/**
+ * A route run under a concurrency limit.
+ *
+ * Each endpoint group shares a Semaphore, so slow raster requests, which
+ * read and decode tiles, cannot take every thread while route and search
+ * requests wait. A request that waits longer than the timeout for a permit
+ * is turned away with a 503.
+ */
+public class ThrottledRoute implements Route {
+    /** HTTP response when no permit frees up in time. */
+    private static final int BUSY_RESPONSE = 503;
+
+    private final Route route;
+    private final Semaphore permits;
+    private final long timeoutMillis;
+
+    /** Runs ROUTE while holding one of PERMITS, waiting at most TIMEOUTMILLIS for it. */
+    public ThrottledRoute(Route route, Semaphore permits, long timeoutMillis) {
+        this.route = route;
+        this.permits = permits;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            halt(BUSY_RESPONSE, "Server busy - try again later.");
+        }
+        try {
+            return route.handle(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
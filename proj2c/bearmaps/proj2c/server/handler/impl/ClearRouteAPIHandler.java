@@ -4,21 +4,29 @@ import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 
-import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import java.util.Map;
 
+import static bearmaps.proj2c.utils.Constants.ROUTE_SESSIONS;
 
 
-public class ClearRouteAPIHandler extends APIRouteHandler {
+
+public class ClearRouteAPIHandler extends APIRouteHandler<Map<String, Object>, Object> {
 
 
     @Override
-    protected Object parseRequestParams(Request request) {
+    protected Map<String, Object> parseRequestParams(Request request) {
         return null;
     }
 
+    /** Clears the route of the session of the request. */
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        ROUTE_SESSIONS.clear(ROUTE_SESSIONS.token(request, response));
+        return buildJsonResponse(processRequest(null, response));
+    }
+
     @Override
-    protected Object processRequest(Object requestParams, Response response) {
-        ROUTE_LIST.clear();
+    protected Object processRequest(Map<String, Object> requestParams, Response response) {
         return true;
     }
 }
@@ -0,0 +1,116 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.DISTANCE_MATRIX_MAX_POINTS;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+public class DistanceMatrixAPIHandler extends APIRouteHandler<Map<String, double[]>, Map<String, Object>> {
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
+
+    /**
+     * Every distance matrix request has a sources parameter, the points to
+     * measure from as comma separated lon,lat pairs: lon1,lat1,lon2,lat2,...
+     * An optional destinations parameter lists the points to measure to in
+     * the same way; without it, the distances between the sources are
+     * returned. Each list has at most DISTANCE_MATRIX_MAX_POINTS points.
+     */
+    private static final String SOURCES = "sources";
+    private static final String DESTINATIONS = "destinations";
+
+    @Override
+    protected Map<String, double[]> parseRequestParams(Request request) {
+        Map<String, double[]> params = new HashMap<>();
+        if (!request.queryParams().contains(SOURCES)) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        params.put(SOURCES, parsePoints(request.queryParams(SOURCES)));
+        if (request.queryParams().contains(DESTINATIONS)) {
+            params.put(DESTINATIONS, parsePoints(request.queryParams(DESTINATIONS)));
+        }
+        return params;
+    }
+
+    /** Returns the coordinates of the list of points POINTS, halting if it is malformed. */
+    private static double[] parsePoints(String points) {
+        String[] parts = points.split(",");
+        if (parts.length % 2 != 0 || parts.length > 2 * DISTANCE_MATRIX_MAX_POINTS) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide at most "
+                    + DISTANCE_MATRIX_MAX_POINTS + " lon,lat pairs.");
+        }
+        double[] coordinates = new double[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i += 1) {
+                coordinates[i] = Double.parseDouble(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        return coordinates;
+    }
+
+    /**
+     * Takes lists of points and finds the street distance from every source
+     * to every destination.
+     * @param requestParams The coordinates of the sources and, optionally,
+     *                      the destinations.
+     * @param response Ignored.
+     * @return A map of results for the front end: <br>
+     * "distance_matrix_success" : Boolean, whether every destination can be
+     *                             reached from every source.
+     * "distances" : double[][], where distances[i][j] is the distance from
+     *               source i to destination j, or -1 if it cannot be reached.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, double[]> requestParams, Response response) {
+        double[] sources = requestParams.get(SOURCES);
+        double[] destinations = requestParams.get(DESTINATIONS);
+        double[][] distances;
+        if (destinations == null) {
+            // Between the sources themselves, snapping each one only once.
+            distances = Router.distanceMatrix(SEMANTIC_STREET_GRAPH, lons(sources), lats(sources));
+        } else {
+            distances = Router.distanceMatrix(SEMANTIC_STREET_GRAPH, lons(sources), lats(sources),
+                    lons(destinations), lats(destinations));
+        }
+
+        boolean success = true;
+        for (double[] row : distances) {
+            for (int j = 0; j < row.length; j += 1) {
+                // JSON has no infinity.
+                if (row[j] == Double.POSITIVE_INFINITY) {
+                    row[j] = -1;
+                    success = false;
+                }
+            }
+        }
+        Map<String, Object> results = new HashMap<>();
+        results.put("distance_matrix_success", success);
+        results.put("distances", distances);
+        return results;
+    }
+
+    private static double[] lons(double[] coordinates) {
+        double[] lons = new double[coordinates.length / 2];
+        for (int i = 0; i < lons.length; i += 1) {
+            lons[i] = coordinates[2 * i];
+        }
+        return lons;
+    }
+
+    private static double[] lats(double[] coordinates) {
+        double[] lats = new double[coordinates.length / 2];
+        for (int i = 0; i < lats.length; i += 1) {
+            lats[i] = coordinates[2 * i + 1];
+        }
+        return lats;
+    }
+}
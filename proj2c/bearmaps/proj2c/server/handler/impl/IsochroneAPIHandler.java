@@ -0,0 +1,79 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.Isochrone;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_MAX_METERS;
+import static bearmaps.proj2c.utils.Constants.ROUTE_SESSIONS;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+
+
+public class IsochroneAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+    private static final double METERS_PER_MILE = 1609.344;
+
+    /**
+     * Each isochrone request to the server will have the following parameters
+     * as keys in the params map.<br>
+     * lon : longitude of the start point,<br> lat : latitude of the start point,<br>
+     * distance : the most meters to travel, capped at ISOCHRONE_MAX_METERS.
+     **/
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lon", "lat", "distance"};
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        return getRequestParams(request, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+    }
+
+    /** Draws the isochrone in the session of the request, which is started if it has none. */
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        String session = ROUTE_SESSIONS.token(request, response);
+        return buildJsonResponse(processRequest(session, parseRequestParams(request)));
+    }
+
+    /** Finds the isochrone without drawing it anywhere. */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        return processRequest(null, requestParams);
+    }
+
+    /**
+     * Finds the street nodes within the given distance of a point. Unless
+     * SESSION is null, the area is set as the isochrone of SESSION in
+     * bearmaps.proj2c.utils.Constants.ROUTE_SESSIONS, to be drawn on its
+     * rasters until it is replaced or the route is cleared.
+     *
+     * @param session The session token of the client.
+     * @param requestParams Map of the HTTP GET request's query parameters - the start
+     *                      lon/lat and the distance in meters.
+     * @return A map of results for the front end: <br>
+     * "isochrone_success" : Boolean, whether any node was reached. <br>
+     * "num_nodes" : Number, the number of nodes reached. <br>
+     * "hull" : double[][], the [lon, lat] corners of the convex hull of the
+     *          reached nodes, counterclockwise.
+     */
+    protected Map<String, Object> processRequest(String session, Map<String, Double> requestParams) {
+        double meters = Math.max(0, Math.min(requestParams.get("distance"), ISOCHRONE_MAX_METERS));
+        Isochrone isochrone = Router.isochrone(SEMANTIC_STREET_GRAPH, requestParams.get("lon"),
+                requestParams.get("lat"), meters / METERS_PER_MILE);
+        if (session != null) {
+            ROUTE_SESSIONS.setIsochrone(session, isochrone);
+        }
+
+        double[][] hull = new double[isochrone.hullSize()][];
+        for (int i = 0; i < hull.length; i += 1) {
+            hull[i] = new double[]{isochrone.hullLon(i), isochrone.hullLat(i)};
+        }
+        Map<String, Object> results = new HashMap<>();
+        results.put("isochrone_success", isochrone.size() > 0);
+        results.put("num_nodes", isochrone.size());
+        results.put("hull", hull);
+        return results;
+    }
+}
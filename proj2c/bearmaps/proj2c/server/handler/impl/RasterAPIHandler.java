@@ -1,21 +1,27 @@
 package bearmaps.proj2c.server.handler.impl;
 
-import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Isochrone;
+import bearmaps.proj2c.RasterEncoder;
+import bearmaps.proj2c.RouteGeometry;
+import bearmaps.proj2c.RouteSessionStore;
+import bearmaps.proj2c.TileCache;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.LruCache;
 import spark.Request;
 import spark.Response;
 import bearmaps.proj2c.utils.Constants;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import static bearmaps.proj2c.utils.Constants.*;
 
@@ -40,6 +46,67 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     private static final String[] REQUIRED_RASTER_RESULT_PARAMS = {"render_grid", "raster_ul_lon",
             "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
+    /** Decoded tiles, shared by all requests. */
+    private final TileCache tileCache = new TileCache(IMG_ROOT, TILE_SIZE, TILE_CACHE_BYTES,
+            TILE_PREFETCH);
+
+    private final RasterEncoder encoder = new RasterEncoder(RASTER_FORMAT,
+            RASTER_PNG_DEFLATE_LEVEL, RASTER_JPEG_QUALITY, RASTER_JPEG_MIN_PIXELS);
+
+    /**
+     * Finished rasters by tile range and route version. A raster only depends
+     * on its tiles and the route and isochrone of its session, so a repeated view is served without
+     * compositing or encoding anything. Route versions are never reused, so
+     * the rasters of changed routes are never served again and age out; all
+     * clients without a route share theirs.
+     */
+    private final LruCache<RasterKey, RenderedRaster> responseCache =
+            new LruCache<>(RASTER_CACHE_BYTES, r -> r.image.length);
+
+
+    /** The tiles of a raster, from (ULX, ULY) to (LRX, LRY) at DEPTH, and the route drawn on them. */
+    private static final class RasterKey {
+        private final int depth, ulx, uly, lrx, lry;
+        private final long routeVersion;
+
+        RasterKey(int depth, int ulx, int uly, int lrx, int lry, long routeVersion) {
+            this.depth = depth;
+            this.ulx = ulx;
+            this.uly = uly;
+            this.lrx = lrx;
+            this.lry = lry;
+            this.routeVersion = routeVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RasterKey)) {
+                return false;
+            }
+            RasterKey k = (RasterKey) o;
+            return depth == k.depth && ulx == k.ulx && uly == k.uly
+                    && lrx == k.lrx && lry == k.lry && routeVersion == k.routeVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(depth, ulx, uly, lrx, lry, routeVersion);
+        }
+    }
+
+    /** The encoded image of a raster, its MIME type and its size in pixels. */
+    static final class RenderedRaster {
+        final byte[] image;
+        final String mimeType;
+        final int width, height;
+
+        RenderedRaster(byte[] image, String mimeType, int width, int height) {
+            this.image = image;
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+        }
+    }
 
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
@@ -145,7 +212,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         renderGrid = new String[rowNum][colNum];
         for (int i = 0; i < rowNum; i += 1) {
             for (int j = 0; j < colNum; j += 1) {
-                renderGrid[i][j] = "d" + depth + "_x" + (j + rasterULLonNum) + "_y" + (i + rasterULLatNum) + ".png";
+                renderGrid[i][j] = TileCache.fileName(depth, j + rasterULLonNum, i + rasterULLatNum);
             }
         }
 
@@ -232,19 +299,99 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         return rasteredParam;
     }
 
+    /**
+     * Answers a raster request like buildJsonResponse would, but streams the
+     * image into the response: the JSON is written up to the image field, then
+     * the image is Base64 encoded straight into the servlet output stream. Only
+     * the encoded image itself, which is cached anyway, is held in memory.
+     */
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        Map<String, Object> result = processRequest(parseRequestParams(request), response);
+        if (!validateRasteredImgParams(result)) {
+            return super.buildJsonResponse(result);
+        }
+        RouteSessionStore.Route route = ROUTE_SESSIONS.route(ROUTE_SESSIONS.token(request, response));
+        RenderedRaster raster = renderedRaster(result, route);
+        result.put("raster_width", raster.width);
+        result.put("raster_height", raster.height);
+        result.put("image_type", raster.mimeType);
+        String json = (String) super.buildJsonResponse(result);
+
+        response.type("application/json");
+        OutputStream out = response.raw().getOutputStream();
+        out.write(json.substring(0, json.length() - 1).getBytes(StandardCharsets.UTF_8));
+        out.write(",\"b64_encoded_image_data\":\"".getBytes(StandardCharsets.UTF_8));
+        // Closing the encoder writes its padding; it must not close OUT.
+        try (OutputStream b64 = Base64.getEncoder().wrap(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        })) {
+            b64.write(raster.image);
+        }
+        out.write("\"}".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return "";
+    }
+
+    /** Builds the JSON response in memory, without a route, as there is no session. */
     @Override
     protected Object buildJsonResponse(Map<String, Object> result) {
         boolean rasterSuccess = validateRasteredImgParams(result);
 
         if (rasterSuccess) {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
-            String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-            result.put("b64_encoded_image_data", encodedImage);
+            RenderedRaster raster = renderedRaster(result, RouteSessionStore.EMPTY);
+            result.put("raster_width", raster.width);
+            result.put("raster_height", raster.height);
+            result.put("image_type", raster.mimeType);
+            result.put("b64_encoded_image_data", Base64.getEncoder().encodeToString(raster.image));
         }
         return super.buildJsonResponse(result);
     }
 
+    /**
+     * Returns the raster of RESULT, a successful result of processRequest,
+     * with ROUTE drawn on it, from responseCache, drawing and encoding it on
+     * a miss.
+     */
+    RenderedRaster renderedRaster(Map<String, Object> result, RouteSessionStore.Route route) {
+        String[][] renderGrid = (String[][]) result.get("render_grid");
+        int ulx = upperLeftTileX(result);
+        int uly = upperLeftTileY(result);
+        RasterKey key = new RasterKey((int) result.get("depth"), ulx, uly,
+                ulx + renderGrid[0].length - 1, uly + renderGrid.length - 1, route.version());
+        RenderedRaster raster = responseCache.get(key);
+        if (raster == null) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            writeImagesToOutputStream(result, route, os);
+            raster = new RenderedRaster(os.toByteArray(), (String) result.get("image_type"),
+                    (int) result.get("raster_width"), (int) result.get("raster_height"));
+            responseCache.put(key, raster);
+        }
+        return raster;
+    }
+
+    /** Returns the x number of the upper left tile of RESULT, recovered from its corner. */
+    private static int upperLeftTileX(Map<String, Object> result) {
+        int tilesPerSide = 1 << (int) result.get("depth");
+        double ullon = (double) result.get("raster_ul_lon");
+        return (int) Math.round((ullon - ROOT_ULLON) / (ROOT_LRLON - ROOT_ULLON) * tilesPerSide);
+    }
+
+    /** Returns the y number of the upper left tile of RESULT, recovered from its corner. */
+    private static int upperLeftTileY(Map<String, Object> result) {
+        int tilesPerSide = 1 << (int) result.get("depth");
+        double ullat = (double) result.get("raster_ul_lat");
+        return (int) Math.round((ROOT_ULLAT - ullat) / (ROOT_ULLAT - ROOT_LRLAT) * tilesPerSide);
+    }
+
     private Map<String, Object> queryFail() {
         Map<String, Object> results = new HashMap<>();
         results.put("render_grid", null);
@@ -261,7 +408,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      * Validates that Rasterer has returned a result that can be rendered.
      * @param rip : Parameters provided by the rasterer
      */
-    private boolean validateRasteredImgParams(Map<String, Object> rip) {
+    boolean validateRasteredImgParams(Map<String, Object> rip) {
         for (String p : REQUIRED_RASTER_RESULT_PARAMS) {
             if (!rip.containsKey(p)) {
                 System.out.println("Your rastering result is missing the " + p + " field.");
@@ -279,78 +426,97 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     }
 
     /**
-     * Writes the images corresponding to rasteredImgParams to the output stream.
+     * Writes the images corresponding to rasteredImgParams, with the isochrone
+     * and route of the session ROUTE drawn over them, to the output stream.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we made this into provided code since it was just a bit too low level.
      */
     private  void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                                  ByteArrayOutputStream os) {
+                                            RouteSessionStore.Route session,
+                                            ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
 
-        BufferedImage img = new BufferedImage(numHorizTiles * Constants.TILE_SIZE,
-                numVertTiles * Constants.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
-        Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
-
-        for (int r = 0; r < numVertTiles; r += 1) {
-            for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(Constants.IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += Constants.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += Constants.TILE_SIZE;
-                }
-            }
-        }
-
-        /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
         double ullat = (double) rasteredImageParams.get("raster_ul_lat"); //tiles.get(0).ulp;
         double lrlon = (double) rasteredImageParams.get("raster_lr_lon"); //tiles.get(0).ulp;
         double lrlat = (double) rasteredImageParams.get("raster_lr_lat"); //tiles.get(0).ulp;
 
+        int depth = (int) rasteredImageParams.get("depth");
+        int ulx = upperLeftTileX(rasteredImageParams);
+        int uly = upperLeftTileY(rasteredImageParams);
+
+        BufferedImage img = tileCache.composite(depth, ulx, uly, numHorizTiles, numVertTiles);
+        Graphics graphic = img.getGraphics();
+        tileCache.prefetchRing(depth, ulx, uly, ulx + numHorizTiles - 1, uly + numVertTiles - 1);
+
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
-        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
 
-        if (route != null && !route.isEmpty()) {
+        /* If there is an isochrone, draw it under the route. */
+        if (session.isochrone() != null) {
+            drawIsochrone((Graphics2D) graphic, session.isochrone(), ullon, ullat, wdpp, hdpp);
+        }
+
+        /* If there is a route, draw it. */
+        RouteGeometry route = session.geometry();
+        if (route != null) {
             Graphics2D g2d = (Graphics2D) graphic;
             g2d.setColor(Constants.ROUTE_STROKE_COLOR);
             g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                        (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+            // Only segments within a stroke width of the raster can show on it.
+            double lonMargin = Constants.ROUTE_STROKE_WIDTH_PX * wdpp;
+            double latMargin = Constants.ROUTE_STROKE_WIDTH_PX * hdpp;
+            route.forEachSegmentIn(ullon - lonMargin, lrlat - latMargin,
+                    lrlon + lonMargin, ullat + latMargin, (lon1, lat1, lon2, lat2) ->
+                    g2d.drawLine((int) ((lon1 - ullon) * (1 / wdpp)),
+                            (int) ((ullat - lat1) * (1 / hdpp)),
+                            (int) ((lon2 - ullon) * (1 / wdpp)),
+                            (int) ((ullat - lat2) * (1 / hdpp))));
         }
 
         rasteredImageParams.put("raster_width", img.getWidth());
         rasteredImageParams.put("raster_height", img.getHeight());
 
         try {
-            ImageIO.write(img, "png", os);
+            RasterEncoder.Format format = encoder.write(img, os);
+            rasteredImageParams.put("image_type", format.mimeType());
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
 
-    private BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Fills the hull of ISOCHRONE on a raster whose upper left corner is at
+     * (ULLON, ULLAT), with WDPP and HDPP degrees per pixel, and outlines it.
+     */
+    private static void drawIsochrone(Graphics2D g2d, Isochrone isochrone, double ullon,
+                                      double ullat, double wdpp, double hdpp) {
+        int n = isochrone.hullSize();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            xs[i] = (int) ((isochrone.hullLon(i) - ullon) * (1 / wdpp));
+            ys[i] = (int) ((ullat - isochrone.hullLat(i)) * (1 / hdpp));
         }
-        return tileImg;
+        g2d.setColor(Constants.ISOCHRONE_FILL_COLOR);
+        g2d.fillPolygon(xs, ys, n);
+        g2d.setColor(Constants.ISOCHRONE_STROKE_COLOR);
+        g2d.setStroke(new BasicStroke(Constants.ISOCHRONE_STROKE_WIDTH_PX,
+                BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.drawPolygon(xs, ys, n);
+    }
+
+    /** Returns the cache of finished rasters, whose counters show how often views repeat. */
+    public LruCache<?, ?> responseCache() {
+        return responseCache;
+    }
+
+    /** Returns the cache of decoded tiles, whose counters show how well it fits the traffic. */
+    public TileCache tileCache() {
+        return tileCache;
     }
 }
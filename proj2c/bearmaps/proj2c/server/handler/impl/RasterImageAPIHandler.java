@@ -0,0 +1,64 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ROUTE_SESSIONS;
+
+
+/**
+ * The raster endpoint without JSON: takes the same parameters as
+ * RasterAPIHandler and answers with the image itself, a PNG or a JPEG,
+ * written straight to the response, so that no Base64 copy is ever made. The rest of the raster
+ * result comes in headers: X-Raster-UL-Lon, X-Raster-UL-Lat, X-Raster-LR-Lon,
+ * X-Raster-LR-Lat and X-Raster-Depth. A failed query is answered with an
+ * empty 204 response.
+ */
+public class RasterImageAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /** The JSON raster endpoint, whose rastering and caches are shared. */
+    private final RasterAPIHandler rasterer;
+
+    public RasterImageAPIHandler(RasterAPIHandler rasterer) {
+        this.rasterer = rasterer;
+    }
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        return rasterer.parseRequestParams(request);
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        return rasterer.processRequest(requestParams, response);
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        Map<String, Object> result = processRequest(parseRequestParams(request), response);
+        if (!rasterer.validateRasteredImgParams(result)) {
+            response.status(204);
+            return "";
+        }
+        RasterAPIHandler.RenderedRaster raster = rasterer.renderedRaster(result,
+                ROUTE_SESSIONS.route(ROUTE_SESSIONS.token(request, response)));
+
+        response.type(raster.mimeType);
+        response.header("X-Raster-UL-Lon", String.valueOf(result.get("raster_ul_lon")));
+        response.header("X-Raster-UL-Lat", String.valueOf(result.get("raster_ul_lat")));
+        response.header("X-Raster-LR-Lon", String.valueOf(result.get("raster_lr_lon")));
+        response.header("X-Raster-LR-Lat", String.valueOf(result.get("raster_lr_lat")));
+        response.header("X-Raster-Depth", String.valueOf(result.get("depth")));
+        HttpServletResponse raw = response.raw();
+        raw.setContentLength(raster.image.length);
+        OutputStream out = raw.getOutputStream();
+        out.write(raster.image);
+        out.flush();
+        return "";
+    }
+}
@@ -1,5 +1,6 @@
 package bearmaps.proj2c.server.handler.impl;
 
+import bearmaps.proj2c.RouteSessionStore;
 import bearmaps.proj2c.Router;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
@@ -10,7 +11,7 @@ import java.util.List;
 import java.util.Map;
 
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
-import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ROUTE_SESSIONS;
 
 
 public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
@@ -29,22 +30,34 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
         return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
     }
 
+    /** Routes in the session of the request, which is started if it has none. */
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        String session = ROUTE_SESSIONS.token(request, response);
+        return buildJsonResponse(processRequest(session, parseRequestParams(request)));
+    }
+
+    /** Routes in a session of its own, with no route before. */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        return processRequest(null, requestParams);
+    }
+
     /**
      * Takes a user query in the form of a pair of (lat/lon) values, and finds
      * street directions between the given points. THis method has been
      * completed for you.
      *
-     * The route to draw on the map should be added to the end of
-     * bearmaps.proj2c.utils.Constants.ROUTE_LIST. This is a LinkedList of longs,
-     * where each long corresponds to one point on the map.
+     * The route to draw on the map is added to the end of the route of
+     * SESSION in bearmaps.proj2c.utils.Constants.ROUTE_SESSIONS, unless
+     * SESSION is null.
      *
      * Street directions can also be provided in the form of text as a return
      * value to this function.
      *
+     * @param session The session token of the client.
      * @param requestParams Map of the HTTP GET request's query parameters - the starting lat/long
      *                      and the destination lat/lon.
-     *
-     * @param response : Not used by this function. You may ignore.
      * @return A map of results for the front end as specified: <br>
      * "routing_success" : Boolean, whether the route list should be drawn (i.e. if not empty).
      *
@@ -52,14 +65,19 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      *                        length of directions is > 0).
      * "directions"      : String. The text directions you want to display, in HTML format.
      */
-    @Override
-    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+    protected Map<String, Object> processRequest(String session, Map<String, Double> requestParams) {
         List<Long> route = Router.shortestPath(
                 SEMANTIC_STREET_GRAPH,
                 requestParams.get("start_lon"), requestParams.get("start_lat"),
                 requestParams.get("end_lon"), requestParams.get("end_lat"));
-        ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+        long[] path = route.stream().mapToLong(Long::longValue).toArray();
+        List<Long> sessionRoute = route;
+        if (session != null) {
+            RouteSessionStore.Route r = ROUTE_SESSIONS.append(session, path,
+                    SEMANTIC_STREET_GRAPH.compactGraph());
+            sessionRoute = r.asList();
+        }
+        String directions = getDirectionsText(sessionRoute);
 
         Map<String, Object> routeParams = new HashMap<>();
         routeParams.put("routing_success", !route.isEmpty());
@@ -69,12 +87,12 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes the ROUTE of a session and converts it into an HTML friendly
      * String to be passed to the frontend.
      */
-    private String getDirectionsText() {
+    private String getDirectionsText(List<Long> route) {
 
-        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, route);
         if (directions == null || directions.isEmpty()) {
             return "";
         }
@@ -3,30 +3,69 @@ package bearmaps.proj2c.server.handler.impl;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
-import bearmaps.proj2c.utils.Tuple;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import static bearmaps.proj2c.utils.Constants.SEARCH_MAX_FUZZY;
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
 
-public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>, Object> {
+public class SearchAPIHandler extends APIRouteHandler<Map<String, String>, Object> {
+    /** HTTP failed response. */
+    private static final int HALT_RESPONSE = 403;
 
+    /**
+     * Every search request has a term parameter. With full, the locations named
+     * term are returned; with words, the locations whose names contain every
+     * word of term; with fuzzy=k, the names within k edits of term, k being
+     * capped at SEARCH_MAX_FUZZY; otherwise the names that start with term.
+     * An optional limit, at least 1, caps the number of results, keeping the
+     * most popular names.
+     */
+    private static final String[] NUMERIC_PARAMS = {"limit", "fuzzy"};
 
     @Override
-    protected Tuple<Set<String>, String> parseRequestParams(Request request) {
-        return new Tuple<>(request.queryParams(), request.queryParams("term"));
+    protected Map<String, String> parseRequestParams(Request request) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : request.queryParams()) {
+            params.put(param, request.queryParams(param));
+        }
+        for (String param : NUMERIC_PARAMS) {
+            if (params.containsKey(param)) {
+                // Halts the request unless the parameter is a number.
+                getRequestParams(request, new String[]{param});
+            }
+        }
+        if (params.containsKey("limit") && Double.parseDouble(params.get("limit")) < 1) {
+            halt(HALT_RESPONSE, "Incorrect parameters - limit must be at least 1.");
+        }
+        if (params.containsKey("fuzzy") && Double.parseDouble(params.get("fuzzy")) < 0) {
+            halt(HALT_RESPONSE, "Incorrect parameters - fuzzy must not be negative.");
+        }
+        return params;
     }
 
     @Override
-    protected Object processRequest(Tuple<Set<String>, String> requestParams, Response response) {
-        Set<String> reqParams = requestParams.getFirst();
-        String term = requestParams.getSecond();
+    protected Object processRequest(Map<String, String> requestParams, Response response) {
+        String term = requestParams.get("term");
         Object result;
         /* Search for actual location data. */
-        if (reqParams.contains("full")) {
+        if (requestParams.containsKey("full")) {
             result = getLocations(term);
+        } else if (requestParams.containsKey("words")) {
+            /* Search for locations with every word of the term in their name. */
+            result = truncate(getLocationsByWords(term), requestParams);
+        } else if (requestParams.containsKey("fuzzy")) {
+            /* Search for names close to the term, allowing for typos. */
+            int maxDistance = (int) Math.min(Double.parseDouble(requestParams.get("fuzzy")),
+                    SEARCH_MAX_FUZZY);
+            result = truncate(getLocationsFuzzy(term, maxDistance), requestParams);
+        } else if (requestParams.containsKey("limit")) {
+            /* Search for the best few prefix matching strings. */
+            int limit = (int) Double.parseDouble(requestParams.get("limit"));
+            result = getLocationsByPrefix(term, limit);
         } else {
             /* Search for prefix matching strings. */
             result = getLocationsByPrefix(term);
@@ -34,6 +73,15 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
         return result;
     }
 
+    /** Returns the first limit items of LIST, or all of them if there is no limit parameter. */
+    private static <T> List<T> truncate(List<T> list, Map<String, String> requestParams) {
+        if (!requestParams.containsKey("limit")) {
+            return list;
+        }
+        int limit = (int) Double.parseDouble(requestParams.get("limit"));
+        return list.subList(0, Math.max(0, Math.min(limit, list.size())));
+    }
+
     /**
      * In linear time, collect all the names of OSM locations that prefix-match the query string.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
@@ -46,6 +94,44 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
         return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix);
     }
 
+    /**
+     * Collect at most LIMIT names of OSM locations that prefix-match the query
+     * string, most popular first.
+     * @param prefix Prefix string to be searched for. Could be any case, with our without
+     *               punctuation.
+     * @param limit The most names to return.
+     * @return A <code>List</code> of the full names of the best matching locations.
+     */
+    public List<String> getLocationsByPrefix(String prefix, int limit) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix, limit);
+    }
+
+    /**
+     * Collect the names of OSM locations within MAXDISTANCE edits of the query
+     * string, closest first.
+     * @param query The name searched for. Could be any case, with our without
+     *              punctuation.
+     * @param maxDistance The most insertions, deletions or substitutions allowed.
+     * @return A <code>List</code> of the full names of the matching locations.
+     */
+    public List<String> getLocationsFuzzy(String query, int maxDistance) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsFuzzy(query, maxDistance);
+    }
+
+    /**
+     * Collect the locations whose name contains every word of the query, the
+     * last one possibly unfinished.
+     * @param query Words to be searched for, in any order.
+     * @return A list of matching locations, each a map of parameters as in
+     * <code>getLocations</code>.
+     */
+    public List<Map<String, Object>> getLocationsByWords(String query) {
+
+        return SEMANTIC_STREET_GRAPH.getLocationsByWords(query);
+    }
+
     /**
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
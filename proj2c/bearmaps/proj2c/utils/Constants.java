@@ -1,10 +1,10 @@
 package bearmaps.proj2c.utils;
 
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RasterEncoder;
+import bearmaps.proj2c.RouteSessionStore;
 
 import java.awt.*;
-import java.util.LinkedList;
-import java.util.List;
 
 
 public class Constants {
@@ -23,6 +23,25 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
 
+    /**
+     * The binary snapshot of OSM_DB_PATH, written by bearmaps.proj2c.GraphSnapshot.
+     * The server falls back to parsing OSM_DB_PATH if it is missing or stale.
+     */
+    public static final String SNAPSHOT_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.snapshot";
+
+    /**
+     * The contraction hierarchy for OSM_DB_PATH, written by
+     * bearmaps.hw4.ch.ContractionHierarchyBuilder. Built in memory if missing.
+     */
+    public static final String CH_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.ch";
+
+    /**
+     * The ALT landmark tables for OSM_DB_PATH, written by bearmaps.hw4.Landmarks.
+     * NUM_LANDMARKS landmarks are picked in memory if missing.
+     */
+    public static final String LANDMARKS_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.alt";
+    public static final int NUM_LANDMARKS = 16;
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-sp19/data/proj2c_imgs/";
 
@@ -32,14 +51,89 @@ public class Constants {
     /** Route stroke information: typically roads are not more than 5px wide. */
     public static final float ROUTE_STROKE_WIDTH_PX = 5.0f;
 
+    /** Isochrone overlay information: a faint orange area with a solid outline. */
+    public static final Color ISOCHRONE_FILL_COLOR = new Color(245, 166, 35, 60);
+    public static final Color ISOCHRONE_STROKE_COLOR = new Color(245, 166, 35, 200);
+    public static final float ISOCHRONE_STROKE_WIDTH_PX = 2.0f;
+
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
 
+    /**
+     * Decoded tiles kept by bearmaps.proj2c.TileCache: 128MB is about 500
+     * tiles of 256KB, several screens at the deepest depth.
+     */
+    public static final long TILE_CACHE_BYTES = 128L << 20;
+
+    /** Whether the tiles around each rastered grid are decoded ahead of time. */
+    public static final boolean TILE_PREFETCH = true;
+
+    /**
+     * Bytes of routes kept by bearmaps.proj2c.RouteCache, about 8 per vertex
+     * and 64 per direction: thousands of trips across town.
+     */
+    public static final long ROUTE_CACHE_BYTES = 16L << 20;
+
+    /** Bytes of finished raster images kept by RasterAPIHandler. */
+    public static final long RASTER_CACHE_BYTES = 64L << 20;
+
+    /**
+     * How rasters are encoded, see bearmaps.proj2c.RasterEncoder: as PNG at a
+     * fast deflate level (0 stores the pixels uncompressed), switching to JPEG
+     * for viewports of RASTER_JPEG_MIN_PIXELS or more.
+     */
+    public static final RasterEncoder.Format RASTER_FORMAT = RasterEncoder.Format.PNG;
+    public static final int RASTER_PNG_DEFLATE_LEVEL = 1;
+    public static final float RASTER_JPEG_QUALITY = 0.85f;
+    public static final long RASTER_JPEG_MIN_PIXELS = Long.MAX_VALUE;
+
+    /**
+     * Most edits a fuzzy search allows. Each edit multiplies the names the
+     * search has to consider, so larger requests are cut down to this.
+     */
+    public static final int SEARCH_MAX_FUZZY = 2;
+
+    /** Most sources, and most destinations, in one distance matrix request. */
+    public static final int DISTANCE_MATRIX_MAX_POINTS = 100;
+
+    /** Farthest isochrone the server expands, in meters. */
+    public static final double ISOCHRONE_MAX_METERS = 10000;
+
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
+    /** The port the server listens on. */
+    public static final int SERVER_PORT = 4567;
+
+    /** Most Jetty threads taking requests, Jetty's own default. */
+    public static final int JETTY_THREADS = 200;
+
     /**
-     * This is used to maintain a single List of route so that the same instance(object) is accessed
-     * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * Whether Jetty takes requests on an executor of ours instead of its own
+     * pool of JETTY_THREADS: one virtual thread per request on Java 21 and
+     * up, otherwise a ThreadPoolExecutor of HANDLER_THREADS threads.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final boolean HANDLER_EXECUTOR = false;
+    public static final int HANDLER_THREADS = 64;
+
+    /**
+     * Most raster, route and search requests handled at once, see
+     * bearmaps.proj2c.server.handler.ThrottledRoute. Requests over the limit
+     * wait up to REQUEST_QUEUE_TIMEOUT_MS, then get a 503.
+     */
+    public static final int RASTER_CONCURRENCY = 8;
+    public static final int ROUTE_CONCURRENCY = 16;
+    public static final int SEARCH_CONCURRENCY = 32;
+    public static final long REQUEST_QUEUE_TIMEOUT_MS = 10000;
+
+    /**
+     * If not null, every API request is appended to this file, to be replayed
+     * by bearmaps.proj2c.LoadTest.
+     */
+    public static final String TRAFFIC_LOG_PATH = null;
+
+    /** Sessions unused for this long lose their route. */
+    public static final long ROUTE_SESSION_TTL_MS = 30 * 60 * 1000;
+
+    /** The route of every client, by session token. */
+    public static final RouteSessionStore ROUTE_SESSIONS = new RouteSessionStore(ROUTE_SESSION_TTL_MS);
 }
@@ -0,0 +1,124 @@
+package bearmaps.proj2c.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A map bounded by the total weight of its values, usually their size in
+ * bytes. Adding past the capacity evicts the least recently used entries.
+ * All methods are synchronized, so a cache can be shared between request
+ * threads; values are computed by the caller outside of the lock.
+ *
+ * The hit, miss and eviction counts cover the cache's whole lifetime and are
+ * meant for sizing it: a high eviction count with a low hit rate means the
+ * capacity is smaller than the working set.
+ */
+public class LruCache<K, V> {
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    /* In access order, so the eldest entry is the least recently used. */
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** A cache holding values of total weight at most CAPACITY, as measured by WEIGHER. */
+    public LruCache(long capacity, ToLongFunction<V> weigher) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /** Returns the value of KEY and marks it as recently used, or null if KEY is not cached. */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    /** Returns whether KEY is cached, without counting a hit or miss or changing the order. */
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Returns the value of KEY and marks it as recently used, or null, like
+     * get, but without counting a hit or miss.
+     */
+    public synchronized V peek(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches VALUE under KEY, replacing any previous value, and evicts least
+     * recently used entries until the total weight fits. A value heavier
+     * than the whole capacity is not cached.
+     */
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        V old = entries.remove(key);
+        if (old != null) {
+            weight -= weigher.applyAsLong(old);
+        }
+        if (w > capacity) {
+            return;
+        }
+        entries.put(key, value);
+        weight += w;
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (weight > capacity) {
+            Map.Entry<K, V> e = eldest.next();
+            weight -= weigher.applyAsLong(e.getValue());
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Removes every entry. The counters are kept. */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Returns the total weight of the cached values. */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("%d entries, %d/%d bytes, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                entries.size(), weight, capacity, hits, misses,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions);
+    }
+}
@@ -0,0 +1,250 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import bearmaps.lab9.CompactTrieSet;
+import bearmaps.lab9.MyTrieSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks CompactTrieSet against MyTrieSet, on random words and on the map's names. */
+public class TestCompactTrieSet {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static Random r = new Random(61);
+
+    /** Words over a few letters, so that many of them share prefixes. */
+    private static List<String> randomWords(int n) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            int length = 1 + r.nextInt(8);
+            StringBuilder word = new StringBuilder();
+            for (int j = 0; j < length; j += 1) {
+                word.append("abcdef ".charAt(r.nextInt(7)));
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** The lower-cased names of every node and way in the map. */
+    private static List<String> mapNames() {
+        CompactStreetMapGraph g = new CompactStreetMapGraph(new StreetMapGraph(OSM_DB_PATH));
+        Set<String> names = new HashSet<>();
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            if (g.name(v) != null) {
+                names.add(g.name(v).toLowerCase());
+            }
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e += 1) {
+                if (g.edgeName(e) != null) {
+                    names.add(g.edgeName(e).toLowerCase());
+                }
+            }
+        }
+        names.remove("");
+        return new ArrayList<>(names);
+    }
+
+    /** Every prefix of every key, the only prefixes MyTrieSet accepts. */
+    private static Set<String> prefixes(List<String> keys, int maxLength) {
+        Set<String> prefixes = new HashSet<>();
+        for (String key : keys) {
+            for (int i = 1; i <= Math.min(maxLength, key.length()); i += 1) {
+                prefixes.add(key.substring(0, i));
+            }
+        }
+        return prefixes;
+    }
+
+    private static void assertSameSets(List<String> keys, List<String> queries) {
+        MyTrieSet expected = new MyTrieSet();
+        CompactTrieSet actual = new CompactTrieSet();
+        for (String key : keys) {
+            expected.add(key);
+            actual.add(key);
+        }
+        assertEquals(new HashSet<>(keys).size(), actual.size());
+        for (String query : queries) {
+            assertEquals(expected.contains(query), actual.contains(query));
+            assertEquals(expected.longestPrefixOf(query), actual.longestPrefixOf(query));
+        }
+        for (String prefix : prefixes(keys, Integer.MAX_VALUE)) {
+            assertEquals(new HashSet<>(expected.keysWithPrefix(prefix)),
+                    new HashSet<>(actual.keysWithPrefix(prefix)));
+        }
+    }
+
+    @Test
+    public void testSmall() {
+        CompactTrieSet trie = new CompactTrieSet();
+        trie.add("hello");
+        trie.add("help");
+        trie.add("hi");
+        trie.add("zebra");
+        assertTrue(trie.contains("help"));
+        assertFalse(trie.contains("hel"));
+        assertFalse(trie.contains("helpful"));
+        assertEquals(Set.of("hello", "help"), new HashSet<>(trie.keysWithPrefix("hel")));
+        assertTrue(trie.keysWithPrefix("x").isEmpty());
+        assertEquals("help", trie.longestPrefixOf("helpful"));
+        trie.clear();
+        assertFalse(trie.contains("help"));
+        assertEquals(0, trie.size());
+    }
+
+    @Test
+    public void testRandomWords() {
+        assertSameSets(randomWords(5000), randomWords(5000));
+    }
+
+    @Test
+    public void testTrimToSize() {
+        List<String> words = randomWords(2000);
+        CompactTrieSet trie = new CompactTrieSet();
+        for (String word : words) {
+            trie.add(word);
+        }
+        trie.trimToSize();
+        for (String word : words) {
+            assertTrue(trie.contains(word));
+        }
+        trie.add("fedcba fedcba");
+        assertTrue(trie.contains("fedcba fedcba"));
+    }
+
+    @Test
+    public void testMapNames() {
+        List<String> names = mapNames();
+        assertSameSets(names, names);
+    }
+
+    @Test
+    public void testTopKeysWithPrefix() {
+        List<String> words = randomWords(3000);
+        Map<String, Double> weights = new HashMap<>();
+        CompactTrieSet trie = new CompactTrieSet();
+        for (String word : words) {
+            double weight = r.nextInt(100);
+            weights.put(word, weight);
+            trie.add(word, weight);
+        }
+        // Lower some weights again, which the subtree maxima have to follow.
+        for (int i = 0; i < 500; i += 1) {
+            String word = words.get(r.nextInt(words.size()));
+            weights.put(word, weights.get(word) - 50);
+            trie.add(word, weights.get(word));
+        }
+        for (String word : words) {
+            assertEquals(weights.get(word), trie.weight(word), 0);
+        }
+        assertEquals(Double.NEGATIVE_INFINITY, trie.weight("not a word"), 0);
+
+        Set<String> prefixes = prefixes(words, 3);
+        prefixes.add("");
+        for (String prefix : prefixes) {
+            for (int k : new int[]{1, 5, 40}) {
+                List<Double> expected = new ArrayList<>();
+                for (String word : weights.keySet()) {
+                    if (word.startsWith(prefix)) {
+                        expected.add(weights.get(word));
+                    }
+                }
+                expected.sort(Comparator.reverseOrder());
+                expected = expected.subList(0, Math.min(k, expected.size()));
+
+                List<String> top = trie.topKeysWithPrefix(prefix, k);
+                assertEquals(top.size(), new HashSet<>(top).size());
+                List<Double> actual = new ArrayList<>();
+                for (String word : top) {
+                    assertTrue(word.startsWith(prefix));
+                    actual.add(weights.get(word));
+                }
+                assertEquals(expected, actual);
+            }
+        }
+        assertTrue(trie.topKeysWithPrefix("zzz", 5).isEmpty());
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] prev = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j += 1) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i += 1) {
+            row[0] = i;
+            for (int j = 1; j <= b.length(); j += 1) {
+                int substitute = prev[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                row[j] = Math.min(substitute, Math.min(prev[j], row[j - 1]) + 1);
+            }
+            int[] temp = prev;
+            prev = row;
+            row = temp;
+        }
+        return prev[b.length()];
+    }
+
+    /** The names within MAXDISTANCE of QUERY, by scanning all of them. */
+    private static Set<String> bruteForceWithinDistance(List<String> names, String query,
+                                                        int maxDistance) {
+        Set<String> result = new HashSet<>();
+        for (String name : names) {
+            if (levenshtein(name, query) <= maxDistance) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Misspells WORD with up to EDITS random insertions, deletions and substitutions. */
+    private static String misspell(String word, int edits) {
+        StringBuilder typo = new StringBuilder(word);
+        for (int i = 0; i < edits; i += 1) {
+            int at = r.nextInt(typo.length() + 1);
+            char c = (char) ('a' + r.nextInt(26));
+            int kind = r.nextInt(3);
+            if (kind == 0 || typo.length() == 0) {
+                typo.insert(at, c);
+            } else if (at == typo.length()) {
+                typo.deleteCharAt(at - 1);
+            } else if (kind == 1) {
+                typo.deleteCharAt(at);
+            } else {
+                typo.setCharAt(at, c);
+            }
+        }
+        return typo.toString();
+    }
+
+    @Test
+    public void testKeysWithinDistance() {
+        List<String> words = randomWords(3000);
+        CompactTrieSet trie = new CompactTrieSet();
+        for (String word : words) {
+            trie.add(word, r.nextInt(10));
+        }
+        for (int i = 0; i < 300; i += 1) {
+            String query = misspell(words.get(r.nextInt(words.size())), r.nextInt(3));
+            for (int maxDistance = 0; maxDistance <= 2; maxDistance += 1) {
+                List<String> actual = trie.keysWithinDistance(query, maxDistance);
+                assertEquals(bruteForceWithinDistance(words, query, maxDistance),
+                        new HashSet<>(actual));
+                for (int j = 1; j < actual.size(); j += 1) {
+                    assertTrue(levenshtein(actual.get(j - 1), query)
+                            <= levenshtein(actual.get(j), query));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.GraphIngestPipeline;
+import bearmaps.hw4.streetmap.StreetMapGraph;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Checks that the ingest pipeline builds the same graph as the single-threaded handler. */
+public class TestGraphIngestPipeline {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+
+    @Test
+    public void testSameGraph() {
+        StreetMapGraph expected = new StreetMapGraph(OSM_DB_PATH, 0);
+        CompactStreetMapGraph vertices = new CompactStreetMapGraph(expected);
+        for (int numWorkers : new int[]{1, 3}) {
+            StreetMapGraph actual = new StreetMapGraph(OSM_DB_PATH, numWorkers);
+            assertTrue(expected.equals(actual));
+            for (int v = 0; v < vertices.numVertices(); v += 1) {
+                long id = vertices.idOf(v);
+                assertEquals(expected.name(id), actual.name(id));
+                assertEquals(expected.lon(id), actual.lon(id), 0);
+                assertEquals(expected.lat(id), actual.lat(id), 0);
+                assertEquals(edgeSet(expected.neighbors(id)), edgeSet(actual.neighbors(id)));
+            }
+        }
+    }
+
+    /**
+     * Fails a worker on its first batch while the parser is still feeding it
+     * an endless file. The parse must fail with the worker's exception rather
+     * than wait for it.
+     */
+    @Test(timeout = 20000)
+    public void testWorkerFailureEndsParse() throws Exception {
+        RuntimeException failure = new IllegalStateException("Worker failed on purpose.");
+        StreetMapGraph g = new StreetMapGraph(OSM_DB_PATH_TINY);
+        GraphIngestPipeline pipeline = new GraphIngestPipeline(g, 2) {
+            @Override
+            protected void beforeBatch(int w, int size) {
+                throw failure;
+            }
+        };
+        try {
+            pipeline.parse(new EndlessNodes());
+            fail("The parse should have failed.");
+        } catch (IOException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    /** An OSM file that lists nodes forever. */
+    private static class EndlessNodes extends InputStream {
+        private byte[] chunk = "<?xml version='1.0'?><osm>".getBytes(StandardCharsets.US_ASCII);
+        private int pos;
+        private long id;
+
+        @Override
+        public int read() {
+            if (pos == chunk.length) {
+                id += 1;
+                chunk = ("<node id='" + id + "' lat='37.87' lon='-122.26'/>")
+                        .getBytes(StandardCharsets.US_ASCII);
+                pos = 0;
+            }
+            return chunk[pos++] & 0xff;
+        }
+    }
+
+    private static HashSet<String> edgeSet(List<WeightedEdge<Long>> edges) {
+        HashSet<String> set = new HashSet<>();
+        for (WeightedEdge<Long> e : edges) {
+            set.add(e.to() + " " + e.weight() + " " + e.getName());
+        }
+        return set;
+    }
+}
@@ -0,0 +1,106 @@
+package bearmaps.test;
+
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.GraphSnapshot;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that a graph read back from a snapshot answers exactly like the original. */
+public class TestGraphSnapshot {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final String OTHER_FILE = "../library-sp19/data/proj2c_test_inputs/path_params.txt";
+    private static final int NUM_QUERIES = 200;
+    private static AugmentedStreetMapGraph graph;
+    private static AugmentedStreetMapGraph snapshot;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        File file = File.createTempFile("bearmaps", ".snapshot");
+        file.deleteOnExit();
+        GraphSnapshot.write(graph, OSM_DB_PATH, file.getPath());
+        snapshot = GraphSnapshot.read(file.getPath(), OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testGraph() {
+        assertTrue(graph.equals(snapshot));
+        CompactStreetMapGraph expected = graph.compactGraph();
+        CompactStreetMapGraph actual = snapshot.compactGraph();
+        assertEquals(expected.numVertices(), actual.numVertices());
+        for (int v = 0; v < expected.numVertices(); v += 1) {
+            long id = expected.idOf(v);
+            assertEquals(id, actual.idOf(v));
+            assertEquals(graph.lon(id), snapshot.lon(id), 0);
+            assertEquals(graph.lat(id), snapshot.lat(id), 0);
+            assertEquals(graph.name(id), snapshot.name(id));
+            assertEquals(edgeSet(graph.neighbors(id)), edgeSet(snapshot.neighbors(id)));
+        }
+    }
+
+    private static HashSet<String> edgeSet(List<WeightedEdge<Long>> edges) {
+        HashSet<String> set = new HashSet<>();
+        for (WeightedEdge<Long> e : edges) {
+            set.add(e.to() + " " + e.weight() + " " + e.getName());
+        }
+        return set;
+    }
+
+    @Test
+    public void testClosest() {
+        Random r = new Random(61);
+        for (int i = 0; i < NUM_QUERIES; i += 1) {
+            double lon = -122.30 + r.nextDouble() * 0.09;
+            double lat = 37.82 + r.nextDouble() * 0.07;
+            assertEquals(graph.closest(lon, lat), snapshot.closest(lon, lat));
+        }
+    }
+
+    @Test
+    public void testNameIndex() {
+        // MyTrieSet only accepts prefixes that some name starts with.
+        HashSet<String> prefixes = new HashSet<>();
+        CompactStreetMapGraph compact = graph.compactGraph();
+        for (int v = 0; v < compact.numVertices(); v += 1) {
+            String name = compact.name(v);
+            if (name != null && !name.isEmpty()
+                    && Character.toLowerCase(name.charAt(0)) >= 'a'
+                    && Character.toLowerCase(name.charAt(0)) <= 'z') {
+                prefixes.add(name.substring(0, 1));
+            }
+        }
+        for (String prefix : prefixes) {
+            List<String> names = graph.getLocationsByPrefix(prefix);
+            assertEquals(new HashSet<>(names),
+                    new HashSet<>(snapshot.getLocationsByPrefix(prefix)));
+            for (String name : names) {
+                assertEquals(new HashSet<>(graph.getLocations(name)),
+                        new HashSet<>(snapshot.getLocations(name)));
+            }
+        }
+    }
+
+    @Test
+    public void testStaleSnapshot() throws Exception {
+        File file = File.createTempFile("bearmaps", ".snapshot");
+        file.deleteOnExit();
+        GraphSnapshot.write(graph, OSM_DB_PATH, file.getPath());
+        assertNull(GraphSnapshot.read(file.getPath(), OTHER_FILE));
+    }
+}
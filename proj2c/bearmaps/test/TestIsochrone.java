@@ -0,0 +1,93 @@
+package bearmaps.test;
+
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Isochrone;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks Isochrone against full Dijkstra sweeps on random sources. */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 20;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testReachedNodes() {
+        CompactStreetMapGraph g = graph.compactGraph();
+        int[] all = new int[g.numVertices()];
+        for (int v = 0; v < all.length; v += 1) {
+            all[v] = v;
+        }
+        Random r = new Random(61);
+        for (int q = 0; q < NUM_QUERIES; q += 1) {
+            int source = r.nextInt(g.numVertices());
+            double budget = r.nextDouble() * 0.5;
+            double[] dist = DistanceMatrix.compute(g, new int[]{source}, all)[0];
+            Isochrone isochrone = Isochrone.compute(g, source, budget);
+
+            Set<Integer> reached = new HashSet<>();
+            double previous = 0;
+            for (int i = 0; i < isochrone.size(); i += 1) {
+                int v = isochrone.vertex(i);
+                assertTrue("Vertex reached twice", reached.add(v));
+                assertEquals(dist[v], isochrone.distance(i), DELTA);
+                assertTrue("Not in order of distance", isochrone.distance(i) >= previous);
+                previous = isochrone.distance(i);
+            }
+            for (int v = 0; v < all.length; v += 1) {
+                assertEquals(dist[v] <= budget, reached.contains(v));
+            }
+            checkHull(g, isochrone);
+        }
+    }
+
+    /** Checks that every reached vertex is inside or on the counterclockwise hull. */
+    private void checkHull(CompactStreetMapGraph g, Isochrone isochrone) {
+        int n = isochrone.hullSize();
+        if (n < 3) {
+            return;
+        }
+        for (int i = 0; i < isochrone.size(); i += 1) {
+            double lon = g.lon(isochrone.vertex(i));
+            double lat = g.lat(isochrone.vertex(i));
+            for (int c = 0; c < n; c += 1) {
+                int d = (c + 1) % n;
+                double cross = (isochrone.hullLon(d) - isochrone.hullLon(c)) * (lat - isochrone.hullLat(c))
+                        - (isochrone.hullLat(d) - isochrone.hullLat(c)) * (lon - isochrone.hullLon(c));
+                assertTrue("Vertex outside the hull", cross >= -1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testRouterSnapsStart() {
+        CompactStreetMapGraph g = graph.compactGraph();
+        int v = g.indexOf(graph.closest(g.lon(10), g.lat(10)));
+        Isochrone isochrone = Router.isochrone(graph, g.lon(10), g.lat(10), 0);
+        assertEquals(1, isochrone.size());
+        assertEquals(v, isochrone.source());
+        assertEquals(v, isochrone.vertex(0));
+        assertEquals(1, isochrone.hullSize());
+    }
+}
@@ -0,0 +1,189 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.KDTree;
+import bearmaps.proj2ab.NaivePointSet;
+import bearmaps.proj2ab.Point;
+import bearmaps.proj2ab.WeirdPointSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/** Checks the bulk-built KDTree against a linear scan, on Berkeley-sized coordinates. */
+public class TestKDTree {
+    private static final double DELTA = 1e-12;
+    private static Random r = new Random(500);
+
+    private Point randomPoint() {
+        return new Point(-122.30 + r.nextDouble() * 0.09, 37.82 + r.nextDouble() * 0.07);
+    }
+
+    private List<Point> randomPoints(int n) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            points.add(randomPoint());
+            // Some duplicates, which the old insertion-based tree dropped.
+            if (i % 100 == 0) {
+                points.add(points.get(points.size() - 1));
+            }
+        }
+        return points;
+    }
+
+    private static double naiveNearestDistance(List<Point> points, Point target) {
+        double best = Double.POSITIVE_INFINITY;
+        for (Point p : points) {
+            best = Math.min(best, Point.distance(p, target));
+        }
+        return best;
+    }
+
+    private void testWithNPointsAndQQueries(int pointCount, int queryCount) {
+        List<Point> points = randomPoints(pointCount);
+        KDTree kd = new KDTree(points);
+        for (int i = 0; i < queryCount; i += 1) {
+            Point target = randomPoint();
+            Point actual = kd.nearest(target.getX(), target.getY());
+            assertEquals(naiveNearestDistance(points, target), Point.distance(actual, target), DELTA);
+        }
+    }
+
+    @Test
+    public void testWith1000PointsAnd200Queries() {
+        testWithNPointsAndQQueries(1000, 200);
+    }
+
+    @Test
+    public void testWith50000PointsAnd500Queries() {
+        // Large enough to be built in parallel.
+        testWithNPointsAndQQueries(50000, 500);
+    }
+
+    @Test
+    public void testSmallTrees() {
+        assertNull(new KDTree(new ArrayList<>()).nearest(0, 0));
+        List<Point> one = List.of(new Point(-122.25, 37.87));
+        assertEquals(one.get(0), new KDTree(one).nearest(-122.26, 37.86));
+    }
+
+    @Test
+    public void testFromLayout() {
+        KDTree kd = new KDTree(randomPoints(5000));
+        double[] xs = new double[kd.size()];
+        double[] ys = new double[kd.size()];
+        int[] ids = new int[kd.size()];
+        for (int i = 0; i < kd.size(); i += 1) {
+            xs[i] = kd.x(i);
+            ys[i] = kd.y(i);
+            ids[i] = kd.id(i);
+        }
+        KDTree copy = KDTree.fromLayout(xs, ys, ids);
+        for (int i = 0; i < 500; i += 1) {
+            Point target = randomPoint();
+            assertEquals(kd.nearest(target.getX(), target.getY()),
+                    copy.nearest(target.getX(), target.getY()));
+        }
+    }
+
+    @Test
+    public void testKNearest() {
+        List<Point> points = randomPoints(5000);
+        KDTree kd = new KDTree(points);
+        NaivePointSet naive = new NaivePointSet(points);
+        for (int k : new int[]{1, 7, 64}) {
+            for (int i = 0; i < 50; i += 1) {
+                Point target = randomPoint();
+                List<Point> expected = naive.kNearest(target.getX(), target.getY(), k);
+                List<Point> actual = kd.kNearest(target.getX(), target.getY(), k);
+                assertEquals(k, actual.size());
+                assertSameDistances(expected, actual, target);
+            }
+        }
+        List<Point> few = randomPoints(3);
+        assertEquals(few.size(), new KDTree(few).kNearest(-122.25, 37.87, 10).size());
+        assertEquals(few.size(), new NaivePointSet(few).kNearest(-122.25, 37.87, 10).size());
+    }
+
+    @Test
+    public void testWithinRadius() {
+        List<Point> points = randomPoints(5000);
+        KDTree kd = new KDTree(points);
+        NaivePointSet naive = new NaivePointSet(points);
+        for (double r : new double[]{0.05, 0.3, 1.0}) {
+            for (int i = 0; i < 100; i += 1) {
+                Point target = randomPoint();
+                List<Point> expected = naive.withinRadius(target.getX(), target.getY(), r);
+                List<Point> actual = kd.withinRadius(target.getX(), target.getY(), r);
+                assertEquals(expected.size(), actual.size());
+                assertSameDistances(expected, actual, target);
+            }
+        }
+    }
+
+    /** Checks that ACTUAL lists points as far from TARGET as those of EXPECTED, in order. */
+    private static void assertSameDistances(List<Point> expected, List<Point> actual, Point target) {
+        for (int j = 0; j < expected.size(); j += 1) {
+            assertEquals(Point.distance(expected.get(j), target),
+                    Point.distance(actual.get(j), target), DELTA);
+        }
+    }
+
+    @Test
+    public void testNearestId() {
+        List<Point> points = randomPoints(5000);
+        KDTree kd = new KDTree(points);
+        assertEquals(-1, new KDTree(new ArrayList<>()).nearestId(0, 0));
+        for (int i = 0; i < 500; i += 1) {
+            Point target = randomPoint();
+            Point nearest = points.get(kd.nearestId(target.getX(), target.getY()));
+            assertEquals(naiveNearestDistance(points, target), Point.distance(nearest, target), DELTA);
+        }
+    }
+
+    @Test
+    public void compareTimingOfNaiveVsWeirdVsKDTree() {
+        List<Point> points = randomPoints(20000);
+        NaivePointSet nps = new NaivePointSet(points);
+        WeirdPointSet wps = new WeirdPointSet(new ArrayList<>(points));
+        KDTree kd = new KDTree(points);
+        List<Point> queryPoints = randomPoints(2000);
+
+        long start = System.currentTimeMillis();
+        for (Point p : queryPoints) {
+            nps.nearest(p.getX(), p.getY());
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Naive 2000 queries on 20000 points: " + (end - start) / 1000.0 + " seconds.");
+
+        start = System.currentTimeMillis();
+        for (Point p : queryPoints) {
+            wps.nearest(p.getX(), p.getY());
+        }
+        end = System.currentTimeMillis();
+        System.out.println("Weird 2000 queries on 20000 points: " + (end - start) / 1000.0 + " seconds.");
+
+        start = System.currentTimeMillis();
+        for (Point p : queryPoints) {
+            kd.nearest(p.getX(), p.getY());
+        }
+        end = System.currentTimeMillis();
+        System.out.println("KDTree nearest 2000 queries on 20000 points: " + (end - start) / 1000.0 + " seconds.");
+
+        start = System.currentTimeMillis();
+        for (Point p : queryPoints) {
+            kd.nearestId(p.getX(), p.getY());
+        }
+        end = System.currentTimeMillis();
+        System.out.println("KDTree nearestId 2000 queries on 20000 points: " + (end - start) / 1000.0 + " seconds.");
+
+        for (Point p : queryPoints) {
+            Point expected = nps.nearest(p.getX(), p.getY());
+            Point actual = points.get(kd.nearestId(p.getX(), p.getY()));
+            assertEquals(Point.distance(expected, p), Point.distance(actual, p), DELTA);
+        }
+    }
+}
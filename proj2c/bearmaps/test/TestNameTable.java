@@ -0,0 +1,96 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.NameTable;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks NameTable against the regex cleaning and a map of lists it replaces. */
+public class TestNameTable {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static Random r = new Random(61);
+
+    private static String regexClean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+    }
+
+    @Test
+    public void testClean() {
+        String alphabet = "aZ mQ'-.,&09\u00e9\u00c9\u0130\u00df\t";
+        for (int i = 0; i < 10000; i += 1) {
+            StringBuilder s = new StringBuilder();
+            int n = r.nextInt(20);
+            for (int j = 0; j < n; j += 1) {
+                s.append(alphabet.charAt(r.nextInt(alphabet.length())));
+            }
+            assertEquals(regexClean(s.toString()), NameTable.clean(s.toString()));
+        }
+        String clean = "peets coffee";
+        assertSame(clean, NameTable.clean(clean));
+    }
+
+    @Test
+    public void testTable() {
+        CompactStreetMapGraph g = new AugmentedStreetMapGraph(OSM_DB_PATH).compactGraph();
+        String[] rawNames = new String[g.numVertices()];
+        Map<String, List<Integer>> expected = new HashMap<>();
+        Map<String, Set<String>> expectedRaw = new HashMap<>();
+        for (int v = 0; v < rawNames.length; v += 1) {
+            rawNames[v] = g.name(v);
+            if (rawNames[v] != null) {
+                String cleaned = regexClean(rawNames[v]);
+                expected.computeIfAbsent(cleaned, k -> new ArrayList<>()).add(v);
+                expectedRaw.computeIfAbsent(cleaned, k -> new HashSet<>()).add(rawNames[v]);
+            }
+        }
+
+        NameTable names = new NameTable(rawNames);
+        assertEquals(expected.size(), names.size());
+        for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+            int c = names.idOf(entry.getKey());
+            assertEquals(entry.getKey(), names.cleanedName(c));
+            assertEquals(entry.getValue().size(), names.count(c));
+            List<Integer> vertices = new ArrayList<>();
+            for (int i = names.begin(c); i < names.end(c); i += 1) {
+                vertices.add(names.vertex(i));
+                assertEquals(c, names.cleanedNameOf(names.vertex(i)));
+            }
+            assertEquals(entry.getValue(), vertices);
+            Set<String> raws = new HashSet<>();
+            for (int i = names.rawBegin(c); i < names.rawEnd(c); i += 1) {
+                raws.add(names.rawName(i));
+            }
+            assertEquals(expectedRaw.get(entry.getKey()), raws);
+        }
+        assertEquals(-1, names.idOf("no such place"));
+    }
+
+    @Test
+    public void testLocationsToJson() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        CompactStreetMapGraph g = graph.compactGraph();
+        Gson gson = new Gson();
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            if (g.name(v) != null) {
+                List<Map<String, Object>> locations = graph.getLocations(g.name(v));
+                String json = gson.toJson(locations);
+                assertEquals(locations.size(), gson.fromJson(json, List.class).size());
+                assertTrue(json.contains("\"id\":" + g.idOf(v)));
+            }
+        }
+        assertEquals("[]", gson.toJson(graph.getLocations("no such place")));
+    }
+}
@@ -0,0 +1,90 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RouteCache;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestRouteCache {
+    private static final String OSM_DB_PATH_TINY = "../library-sp19/data/proj2c_xml/tiny-clean.osm.xml";
+    private AugmentedStreetMapGraph graphTiny;
+
+    @Before
+    public void setUp() throws Exception {
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+    }
+
+    @Test
+    public void testRepeatedQueriesHit() {
+        RouteCache cache = graphTiny.routeCache();
+        List<Long> first = Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6);
+        assertEquals(List.of(41L, 63L, 66L, 46L), first);
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+
+        // Nearby points snap to the same nodes, and so share the route.
+        List<Long> second = Router.shortestPath(graphTiny, 0.41, 38.11, 0.39, 38.59,
+                Router.Algorithm.BIDIRECTIONAL_ASTAR);
+        assertEquals(first, second);
+        assertEquals(1, cache.hits());
+        assertEquals(0.5, cache.hitRatio(), 1e-9);
+
+        Router.shortestPath(graphTiny, 0.6, 38.6, 0.5, 38.5);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testCachedDirections() throws Exception {
+        List<Long> route = Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6);
+        List<Router.NavigationDirection> cached = Router.routeDirections(graphTiny, route);
+        assertEquals(cached, Router.routeDirections(graphTiny, List.copyOf(route)));
+
+        // Callers get copies, so changing one leaves the cache alone.
+        List<Router.NavigationDirection> changed = Router.routeDirections(graphTiny, route);
+        changed.clear();
+        route.clear();
+        route.addAll(Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6));
+        assertEquals(List.of(41L, 63L, 66L, 46L), route);
+        assertEquals(cached, Router.routeDirections(graphTiny, route));
+        assertTrue(!cached.isEmpty());
+
+        // The directions in the list are copies too. Their fields are package
+        // private, so change one by reflection, as a caller in the package could.
+        Field distance = Router.NavigationDirection.class.getDeclaredField("distance");
+        distance.setAccessible(true);
+        Router.NavigationDirection first = Router.routeDirections(graphTiny, route).get(0);
+        double before = distance.getDouble(first);
+        distance.setDouble(first, before + 1);
+        assertEquals(before, distance.getDouble(Router.routeDirections(graphTiny, route).get(0)), 0);
+
+        // Directions of routes not in the cache are built as before.
+        graphTiny.routeCache().clear();
+        List<Router.NavigationDirection> built = Router.routeDirections(graphTiny, route);
+        assertEquals(cached, built);
+        assertTrue(built != cached);
+    }
+
+    @Test
+    public void testEviction() {
+        RouteCache cache = new RouteCache(graphTiny.compactGraph(), 500);
+        cache.route(graphTiny, 41, 46, Router.Algorithm.ASTAR);
+        cache.route(graphTiny, 22, 66, Router.Algorithm.ASTAR);
+        cache.route(graphTiny, 66, 55, Router.Algorithm.ASTAR);
+        assertTrue(cache.evictions() > 0);
+        assertTrue(cache.weight() <= 500);
+
+        // The most recent route survives.
+        long misses = cache.misses();
+        cache.route(graphTiny, 66, 55, Router.Algorithm.ASTAR);
+        assertEquals(misses, cache.misses());
+    }
+}
@@ -0,0 +1,75 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RouteGeometry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks RouteGeometry against testing every segment of random walks. */
+public class TestRouteGeometry {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static Random r = new Random(61);
+
+    /** Returns the ids of a random walk of N vertices in G. */
+    private static long[] randomWalk(CompactStreetMapGraph g, int n) {
+        long[] walk = new long[n];
+        int v = r.nextInt(g.numVertices());
+        for (int i = 0; i < n; i += 1) {
+            walk[i] = g.idOf(v);
+            int degree = g.edgeEnd(v) - g.edgeBegin(v);
+            if (degree > 0) {
+                v = g.edgeTarget(g.edgeBegin(v) + r.nextInt(degree));
+            }
+        }
+        return walk;
+    }
+
+    /** The segments of ROUTE whose bounding box meets the given box, as "s" for segment s. */
+    private static List<String> naiveSegments(CompactStreetMapGraph g, long[] route, double minLon,
+                                              double minLat, double maxLon, double maxLat) {
+        List<String> segments = new ArrayList<>();
+        for (int s = 0; s + 1 < route.length; s += 1) {
+            int v = g.indexOf(route[s]);
+            int w = g.indexOf(route[s + 1]);
+            if (Math.max(g.lon(v), g.lon(w)) >= minLon && Math.min(g.lon(v), g.lon(w)) <= maxLon
+                    && Math.max(g.lat(v), g.lat(w)) >= minLat && Math.min(g.lat(v), g.lat(w)) <= maxLat) {
+                segments.add(g.lon(v) + "," + g.lat(v) + "," + g.lon(w) + "," + g.lat(w));
+            }
+        }
+        return segments;
+    }
+
+    @Test
+    public void testForEachSegmentIn() {
+        CompactStreetMapGraph g = new AugmentedStreetMapGraph(OSM_DB_PATH).compactGraph();
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < g.numVertices(); v += 1) {
+            minLon = Math.min(minLon, g.lon(v));
+            maxLon = Math.max(maxLon, g.lon(v));
+            minLat = Math.min(minLat, g.lat(v));
+            maxLat = Math.max(maxLat, g.lat(v));
+        }
+        for (int n : new int[]{0, 1, 2, 3, 17, 64, 1000}) {
+            long[] route = randomWalk(g, n);
+            RouteGeometry geometry = new RouteGeometry(g, route);
+            assertEquals(n, geometry.numPoints());
+            for (int i = 0; i < 200; i += 1) {
+                double lon1 = minLon + r.nextDouble() * (maxLon - minLon);
+                double lon2 = lon1 + r.nextDouble() * (maxLon - minLon) / 4;
+                double lat1 = minLat + r.nextDouble() * (maxLat - minLat);
+                double lat2 = lat1 + r.nextDouble() * (maxLat - minLat) / 4;
+                List<String> found = new ArrayList<>();
+                geometry.forEachSegmentIn(lon1, lat1, lon2, lat2, (a, b, c, d) ->
+                        found.add(a + "," + b + "," + c + "," + d));
+                assertEquals(naiveSegments(g, route, lon1, lat1, lon2, lat2), found);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Isochrone;
+import bearmaps.proj2c.RouteSessionStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that RouteSessionStore keeps sessions apart and drops idle ones. */
+public class TestRouteSessionStore {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final long TTL = 1000;
+    private static CompactStreetMapGraph g;
+    private AtomicLong now;
+    private RouteSessionStore store;
+
+    @Before
+    public void setUp() {
+        if (g == null) {
+            g = new AugmentedStreetMapGraph(OSM_DB_PATH).compactGraph();
+        }
+        now = new AtomicLong();
+        store = new RouteSessionStore(TTL, now::get);
+    }
+
+    private static long[] ids(int... vertices) {
+        long[] ids = new long[vertices.length];
+        for (int i = 0; i < vertices.length; i += 1) {
+            ids[i] = g.idOf(vertices[i]);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSessionsAreSeparate() {
+        assertSame(RouteSessionStore.EMPTY, store.route("a"));
+        RouteSessionStore.Route a = store.append("a", ids(0, 1, 2), g);
+        store.append("b", ids(5), g);
+        RouteSessionStore.Route b = store.append("b", ids(6), g);
+
+        assertEquals(3, store.route("a").size());
+        assertEquals(g.idOf(2), store.route("a").id(2));
+        assertNotNull(a.geometry());
+        assertEquals(2, b.size());
+        assertEquals(List.of(g.idOf(5), g.idOf(6)), store.route("b").asList());
+        assertTrue(a.version() != b.version());
+        assertTrue(a.version() != RouteSessionStore.EMPTY.version());
+
+        store.clear("a");
+        assertSame(RouteSessionStore.EMPTY, store.route("a"));
+        assertEquals(2, store.route("b").size());
+        assertNull(store.append("c", ids(7), g).geometry());
+    }
+
+    @Test
+    public void testExpiry() {
+        store.append("a", ids(0, 1), g);
+        store.append("b", ids(2, 3), g);
+        now.set(TTL / 2);
+        store.route("a");
+        now.set(TTL + 1);
+        // b has been idle for longer than the TTL, a has not.
+        store.evictExpired();
+        assertEquals(1, store.size());
+        assertEquals(2, store.route("a").size());
+        assertSame(RouteSessionStore.EMPTY, store.route("b"));
+
+        // Accesses sweep on their own once half a TTL has passed.
+        now.set(3 * TTL);
+        store.route("c");
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        int threads = 8;
+        int appends = 200;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t += 1) {
+            int first = t * appends;
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < appends; i += 1) {
+                    store.append("shared", ids(first + i), g);
+                    store.append("own" + first, ids(first + i), g);
+                }
+            }));
+        }
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        RouteSessionStore.Route shared = store.route("shared");
+        assertEquals(threads * appends, shared.size());
+        assertEquals(threads * appends, new HashSet<>(shared.asList()).size());
+        Set<Long> versions = new HashSet<>();
+        for (int t = 0; t < threads; t += 1) {
+            RouteSessionStore.Route own = store.route("own" + t * appends);
+            assertEquals(appends, own.size());
+            assertEquals(g.idOf(t * appends), own.id(0));
+            versions.add(own.version());
+        }
+        versions.add(shared.version());
+        assertEquals(threads + 1, versions.size());
+    }
+
+    @Test
+    public void testConcurrentClearAndAppend() throws Exception {
+        for (int round = 0; round < 500; round += 1) {
+            store.append("a", ids(0, 1, 2), g);
+            CountDownLatch go = new CountDownLatch(1);
+            Thread appender = new Thread(() -> {
+                awaitQuietly(go);
+                store.append("a", ids(3), g);
+            });
+            Thread clearer = new Thread(() -> {
+                awaitQuietly(go);
+                store.clear("a");
+            });
+            appender.start();
+            clearer.start();
+            go.countDown();
+            appender.join();
+            clearer.join();
+
+            // Either the clear came first and only the append is left, or
+            // it came last and nothing is; never the old route plus [3].
+            RouteSessionStore.Route route = store.route("a");
+            assertTrue("Clear was undone: " + route.asList(),
+                    route == RouteSessionStore.EMPTY || route.asList().equals(List.of(g.idOf(3))));
+            store.clear("a");
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testIsochroneKeepsRoute() {
+        RouteSessionStore.Route route = store.append("a", ids(0, 1, 2), g);
+        Isochrone isochrone = Isochrone.compute(g, 1, 0.1);
+        RouteSessionStore.Route withIsochrone = store.setIsochrone("a", isochrone);
+        assertSame(isochrone, store.route("a").isochrone());
+        assertEquals(route.asList(), withIsochrone.asList());
+        assertTrue(withIsochrone.version() > route.version());
+
+        // Appending keeps the isochrone; clearing drops both.
+        assertSame(isochrone, store.append("a", ids(3), g).isochrone());
+        assertNull(store.route("b").isochrone());
+        store.clear("a");
+        assertSame(RouteSessionStore.EMPTY, store.route("a"));
+    }
+}
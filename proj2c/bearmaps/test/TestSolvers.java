@@ -0,0 +1,144 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.DistanceMatrix;
+import bearmaps.hw4.IntAStarSolver;
+import bearmaps.hw4.LandmarkAStarGraph;
+import bearmaps.hw4.Landmarks;
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.ch.CHSolver;
+import bearmaps.hw4.ch.ContractionHierarchy;
+import bearmaps.hw4.ch.ContractionHierarchyBuilder;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the primitive solvers against AStarSolver on random queries. */
+public class TestSolvers {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 200;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    private void checkAgainstAStar(SolverFactory factory) {
+        CompactStreetMapGraph compact = graph.compactGraph();
+        Random r = new Random(61);
+        for (int i = 0; i < NUM_QUERIES; i += 1) {
+            long start = compact.idOf(r.nextInt(compact.numVertices()));
+            long end = compact.idOf(r.nextInt(compact.numVertices()));
+            AStarSolver<Long> expected = new AStarSolver<>(graph, start, end, 20);
+            ShortestPathsSolver<Long> actual = factory.solve(start, end);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            if (actual.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(start, (long) actual.solution().get(0));
+                assertEquals(end, (long) actual.solution().get(actual.solution().size() - 1));
+                assertEquals(actual.solutionWeight(), pathWeight(actual.solution()), DELTA);
+            }
+        }
+    }
+
+    /** Sums the edges along PATH, failing if two consecutive vertices are not adjacent. */
+    private double pathWeight(List<Long> path) {
+        double weight = 0;
+        for (int i = 1; i < path.size(); i += 1) {
+            double best = Double.POSITIVE_INFINITY;
+            for (WeightedEdge<Long> edge : graph.neighbors(path.get(i - 1))) {
+                if (edge.to().equals(path.get(i))) {
+                    best = Math.min(best, edge.weight());
+                }
+            }
+            assertTrue("Consecutive path vertices are not adjacent", best < Double.POSITIVE_INFINITY);
+            weight += best;
+        }
+        return weight;
+    }
+
+    @Test
+    public void testIntAStarSolver() {
+        checkAgainstAStar((start, end) -> new IntAStarSolver(graph.compactGraph(), start, end, 20));
+    }
+
+    @Test
+    public void testBidirectionalAStarSolver() {
+        checkAgainstAStar((start, end) ->
+                new BidirectionalAStarSolver(graph.compactGraph(), start, end, 20));
+    }
+
+    @Test
+    public void testCHSolver() {
+        ContractionHierarchy ch = new ContractionHierarchyBuilder(graph.compactGraph()).build();
+        checkAgainstAStar((start, end) -> new CHSolver(ch, start, end, 20));
+    }
+
+    @Test
+    public void testDistanceMatrix() {
+        CompactStreetMapGraph compact = graph.compactGraph();
+        Random r = new Random(61);
+        int[] sources = new int[12];
+        int[] targets = new int[17];
+        for (int i = 0; i < sources.length; i += 1) {
+            sources[i] = r.nextInt(compact.numVertices());
+        }
+        for (int j = 0; j < targets.length; j += 1) {
+            targets[j] = r.nextInt(compact.numVertices());
+        }
+        // Repeated and missing vertices.
+        targets[5] = targets[3];
+        targets[6] = sources[0];
+        targets[7] = -1;
+
+        double[][] matrix = DistanceMatrix.compute(compact, sources, targets);
+        assertEquals(sources.length, matrix.length);
+        for (int i = 0; i < sources.length; i += 1) {
+            assertEquals(targets.length, matrix[i].length);
+            for (int j = 0; j < targets.length; j += 1) {
+                if (targets[j] < 0) {
+                    assertEquals(Double.POSITIVE_INFINITY, matrix[i][j], 0);
+                    continue;
+                }
+                IntAStarSolver expected = new IntAStarSolver(compact, compact.idOf(sources[i]),
+                        compact.idOf(targets[j]), 20);
+                double weight = expected.outcome() == SolverOutcome.SOLVED
+                        ? expected.solutionWeight() : Double.POSITIVE_INFINITY;
+                assertEquals(weight, matrix[i][j], DELTA);
+            }
+        }
+        assertEquals(0, matrix[0][6], 0);
+    }
+
+    @Test
+    public void testLandmarkAStarGraph() {
+        for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+            Landmarks landmarks = Landmarks.select(graph.compactGraph(), 8, selection, 0);
+            LandmarkAStarGraph<CompactStreetMapGraph> alt =
+                    new LandmarkAStarGraph<>(graph.compactGraph(), landmarks);
+            checkAgainstAStar((start, end) -> new AStarSolver<>(alt, start, end, 20));
+            checkAgainstAStar((start, end) -> new IntAStarSolver(alt, start, end, 20));
+        }
+    }
+
+    private interface SolverFactory {
+        ShortestPathsSolver<Long> solve(long start, long end);
+    }
+}
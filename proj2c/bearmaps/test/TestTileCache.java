@@ -0,0 +1,208 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RasterEncoder;
+import bearmaps.proj2c.TileCache;
+import bearmaps.proj2c.utils.LruCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks LruCache eviction, TileCache and RasterEncoder on folders of generated tiles. */
+public class TestTileCache {
+    private static final int DEPTH = 2;
+    private static final int SIZE = 16;
+    private static final long TILE_BYTES = SIZE * SIZE * 4;
+    private static Random r = new Random(61);
+    private String imgRoot;
+
+    /** Writes every tile at DEPTH, each filled with a color encoding its x and y. */
+    @Before
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        for (int x = 0; x < (1 << DEPTH); x += 1) {
+            for (int y = 0; y < (1 << DEPTH); y += 1) {
+                BufferedImage tile = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+                for (int i = 0; i < SIZE; i += 1) {
+                    for (int j = 0; j < SIZE; j += 1) {
+                        tile.setRGB(i, j, 0xff000000 | (x << 16) | (y << 8));
+                    }
+                }
+                write(tile, new File(dir, TileCache.fileName(DEPTH, x, y)));
+            }
+        }
+        imgRoot = dir.getPath() + File.separator;
+    }
+
+    private static void write(BufferedImage tile, File f) throws Exception {
+        ImageIO.write(tile, "png", f);
+        f.deleteOnExit();
+    }
+
+    /** Writes every 256x256 tile at DEPTH to a new folder, drawn like a street map, and returns the folder. */
+    private static String mapLikeTiles(int depth) throws Exception {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        for (int x = 0; x < (1 << depth); x += 1) {
+            for (int y = 0; y < (1 << depth); y += 1) {
+                BufferedImage tile = new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR);
+                Graphics2D g = tile.createGraphics();
+                g.setColor(new Color(0xe8e4dc));
+                g.fillRect(0, 0, 256, 256);
+                for (int i = 0; i < 30; i += 1) {
+                    g.setColor(new Color(r.nextInt(0x1000000)));
+                    if (i % 3 == 0) {
+                        g.fillRect(r.nextInt(256), r.nextInt(256), r.nextInt(60), r.nextInt(60));
+                    } else {
+                        g.drawLine(r.nextInt(256), r.nextInt(256), r.nextInt(256), r.nextInt(256));
+                    }
+                }
+                g.drawString("Street " + x + " " + y, r.nextInt(200), r.nextInt(256));
+                g.dispose();
+                write(tile, new File(dir, TileCache.fileName(depth, x, y)));
+            }
+        }
+        return dir.getPath() + File.separator;
+    }
+
+    @Test
+    public void testLruCache() {
+        LruCache<String, String> cache = new LruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertEquals("aaaa", cache.get("a"));
+        // b is now the least recently used, and goes first.
+        cache.put("c", "cccc");
+        assertNull(cache.get("b"));
+        assertEquals(8, cache.weight());
+        assertEquals(1, cache.evictions());
+        cache.put("a", "a");
+        assertEquals(5, cache.weight());
+        // Too heavy to cache at all.
+        cache.put("d", "ddddddddddd");
+        assertFalse(cache.containsKey("d"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testGetAndEvict() {
+        TileCache tiles = new TileCache(imgRoot, SIZE, 3 * TILE_BYTES, false);
+        BufferedImage tile = tiles.get(DEPTH, 1, 2);
+        assertNotNull(tile);
+        assertEquals(0xff010200, tile.getRGB(0, 0));
+        assertSame(tile, tiles.get(DEPTH, 1, 2));
+        assertEquals(1, tiles.hits());
+        assertEquals(1, tiles.misses());
+
+        tiles.get(DEPTH, 0, 0);
+        tiles.get(DEPTH, 0, 1);
+        tiles.get(DEPTH, 1, 2);
+        tiles.get(DEPTH, 3, 3);
+        // (0, 0) was the least recently used.
+        assertEquals(1, tiles.evictions());
+        assertEquals(3, tiles.size());
+        assertTrue(tiles.weight() <= 3 * TILE_BYTES);
+        assertSame(tile, tiles.get(DEPTH, 1, 2));
+
+        assertNull(tiles.get(DEPTH, 4, 0));
+    }
+
+    @Test
+    public void testPrefetchRing() throws Exception {
+        TileCache tiles = new TileCache(imgRoot, SIZE, 100 * TILE_BYTES, true);
+        tiles.get(DEPTH, 1, 1);
+        // The ring around (1, 1) is the 8 tiles from (0, 0) to (2, 2).
+        tiles.prefetchRing(DEPTH, 1, 1, 1, 1);
+        for (int i = 0; i < 100 && tiles.size() < 9; i += 1) {
+            Thread.sleep(20);
+        }
+        assertEquals(9, tiles.size());
+        long misses = tiles.misses();
+        for (int x = 0; x <= 2; x += 1) {
+            for (int y = 0; y <= 2; y += 1) {
+                assertNotNull(tiles.get(DEPTH, x, y));
+            }
+        }
+        assertEquals(misses, tiles.misses());
+
+        // Clipped at the edges of the map.
+        tiles.prefetchRing(DEPTH, 3, 3, 3, 3);
+        for (int i = 0; i < 100 && tiles.size() < 11; i += 1) {
+            Thread.sleep(20);
+        }
+        assertEquals(11, tiles.size());
+    }
+
+    /** Draws the tiles one at a time, as RasterAPIHandler used to. */
+    private static BufferedImage drawTiles(TileCache tiles, int depth, int ulx, int uly,
+                                           int cols, int rows, int tileSize) {
+        BufferedImage img = new BufferedImage(cols * tileSize, rows * tileSize,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = img.getGraphics();
+        for (int row = 0; row < rows; row += 1) {
+            for (int col = 0; col < cols; col += 1) {
+                g.drawImage(tiles.get(depth, ulx + col, uly + row), col * tileSize, row * tileSize, null);
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 1) {
+            for (int x = 0; x < expected.getWidth(); x += 1) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testComposite() throws Exception {
+        TileCache tiles = new TileCache(mapLikeTiles(2), 256, 100L << 20, false);
+        assertSamePixels(drawTiles(tiles, 2, 0, 0, 4, 4, 256), tiles.composite(2, 0, 0, 4, 4));
+        assertSamePixels(drawTiles(tiles, 2, 1, 2, 3, 2, 256), tiles.composite(2, 1, 2, 3, 2));
+        // Tiles past the edge of the map are missing and stay black.
+        assertSamePixels(drawTiles(tiles, 2, 3, 3, 2, 2, 256), tiles.composite(2, 3, 3, 2, 2));
+    }
+
+    @Test
+    public void testEncoder() throws Exception {
+        BufferedImage img = new TileCache(mapLikeTiles(1), 256, 100L << 20, false)
+                .composite(1, 0, 0, 2, 2);
+        long smallest = Long.MAX_VALUE;
+        for (int level : new int[]{0, 1, 6, 9}) {
+            RasterEncoder encoder = new RasterEncoder(RasterEncoder.Format.PNG, level, 0.85f,
+                    Long.MAX_VALUE);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            assertEquals(RasterEncoder.Format.PNG, encoder.write(img, os));
+            // PNG is lossless at every level.
+            assertSamePixels(img, ImageIO.read(new ByteArrayInputStream(os.toByteArray())));
+            assertTrue("level " + level, os.size() <= smallest);
+            smallest = os.size();
+        }
+        RasterEncoder large = new RasterEncoder(RasterEncoder.Format.PNG, 1, 0.85f, 512 * 512);
+        assertEquals(RasterEncoder.Format.JPEG, large.write(img, new ByteArrayOutputStream()));
+        assertEquals(RasterEncoder.Format.PNG, large.formatOf(new BufferedImage(256, 256,
+                BufferedImage.TYPE_INT_RGB)));
+    }
+}
@@ -0,0 +1,136 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.TokenIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks TokenIndex against scanning every name. */
+public class TestTokenIndex {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final String[] WORDS = {"peets", "coffee", "telegraph", "tea", "team",
+        "shattuck", "shop", "sushi", "cafe", "caffe", "the", "a", "avenue", "bank"};
+    private static Random r = new Random(61);
+
+    private static String randomName() {
+        StringBuilder name = new StringBuilder();
+        int n = 1 + r.nextInt(4);
+        for (int i = 0; i < n; i += 1) {
+            if (i > 0) {
+                name.append(r.nextInt(10) == 0 ? "  " : " ");
+            }
+            name.append(WORDS[r.nextInt(WORDS.length)]);
+        }
+        return name.toString();
+    }
+
+    private static String randomQuery() {
+        String query = randomName();
+        if (r.nextBoolean()) {
+            query = query.substring(0, 1 + r.nextInt(query.length()));
+        }
+        return r.nextInt(5) == 0 ? query + " " : query;
+    }
+
+    /** The vertices whose name has every word of QUERY, the last as a prefix unless QUERY ends in a space. */
+    private static int[] naiveSearch(String[] names, String query) {
+        List<String> words = new ArrayList<>(Arrays.asList(query.trim().split(" +")));
+        words.remove("");
+        if (words.isEmpty()) {
+            return new int[0];
+        }
+        String prefix = query.endsWith(" ") ? null : words.remove(words.size() - 1);
+        List<Integer> result = new ArrayList<>();
+        for (int v = 0; v < names.length; v += 1) {
+            if (names[v] == null) {
+                continue;
+            }
+            Set<String> nameWords = new HashSet<>(Arrays.asList(names[v].split(" ")));
+            boolean match = nameWords.containsAll(words);
+            if (match && prefix != null) {
+                match = false;
+                for (String word : nameWords) {
+                    match |= !word.isEmpty() && word.startsWith(prefix);
+                }
+            }
+            if (match) {
+                result.add(v);
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testRandomNames() {
+        String[] names = new String[5000];
+        for (int v = 0; v < names.length; v += 1) {
+            names[v] = r.nextInt(4) == 0 ? null : randomName();
+        }
+        TokenIndex index = new TokenIndex(names);
+        assertEquals(WORDS.length, index.numTokens());
+        for (int i = 0; i < 1000; i += 1) {
+            String query = randomQuery();
+            assertArrayEquals(query, naiveSearch(names, query), index.search(query));
+        }
+        assertEquals(0, index.search("coffee zebra").length);
+        assertEquals(0, index.search(" ").length);
+    }
+
+    private static String clean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+    }
+
+    @Test
+    public void testMapNames() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        CompactStreetMapGraph compact = graph.compactGraph();
+        for (int v = 0; v < compact.numVertices(); v += 10) {
+            String name = compact.name(v);
+            if (name == null) {
+                continue;
+            }
+            String[] words = name.split(" ");
+            // The last word of the name alone, as typed.
+            String query = words[words.length - 1];
+            if (clean(query).isEmpty()) {
+                continue;
+            }
+            boolean found = false;
+            for (Map<String, Object> location : graph.getLocationsByWords(query)) {
+                found |= location.get("id").equals(compact.idOf(v));
+                assertTrue(clean((String) location.get("name")).contains(clean(query)));
+            }
+            assertTrue(name, found);
+        }
+    }
+
+    @Test
+    public void testMapNamesMostPopularFirst() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        List<Map<String, Object>> locations = graph.getLocationsByWords("sushi");
+        assertTrue(locations.size() > 1);
+        // By default a name is as popular as the number of nodes carrying it.
+        int previous = Integer.MAX_VALUE;
+        for (Map<String, Object> location : locations) {
+            int count = graph.getLocations((String) location.get("name")).size();
+            assertTrue(count <= previous);
+            previous = count;
+        }
+
+        String last = (String) locations.get(locations.size() - 1).get("name");
+        graph.setLocationPopularity(last, 1e9);
+        assertEquals(clean(last), clean((String) graph.getLocationsByWords("sushi").get(0).get("name")));
+    }
+}
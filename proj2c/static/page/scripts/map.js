@@ -52,6 +52,9 @@ $(function() {
     const raster_server = host + '/raster';
     const route_server = host + '/route';
     const clear_route = host + '/clear_route';
+    const isochrone_server = host + '/isochrone';
+    /* Meters covered by the area shift-double-clicking draws: a ten minute walk. */
+    const ISOCHRONE_METERS = 800;
     const search = host + '/search';
 
     /* ════════════════════════════ ೋღ HELPERS ღೋ ══════════════════════════ */
@@ -96,7 +99,8 @@ $(function() {
                 console.log(data);
                 if (data.query_success) {
                     $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
+                    map.src = 'data:' + (data.image_type || 'image/png') + ';base64,'
+                        + data.b64_encoded_image_data;
                     console.log('Updating map with image length: ' +
                                 data.b64_encoded_image_data.length);
                     ullon_bound = data.raster_ul_lon;
@@ -412,14 +416,24 @@ $(function() {
     });
 
     $('body').dblclick(function handler(event) {
-        if (route_params.start_lon && route_params.end_lon) { //finished routing, reset routing
-            route_params = {};
-        }
         const offset = $body.offset();
         const viewbounds = get_view_bounds();
         var click_lon = (event.pageX - offset.left) * get_londpp() + viewbounds.ullon;
         var click_lat = (event.pageY - offset.top) * get_latdpp() + viewbounds.ullat;
 
+        if (event.shiftKey) { // draw the area reachable from the click instead of routing
+            $.get({
+                async: true,
+                url: isochrone_server,
+                data: { lon: click_lon, lat: click_lat, distance: ISOCHRONE_METERS },
+                success: function() { updateImg(); },
+            });
+            return;
+        }
+        if (route_params.start_lon && route_params.end_lon) { //finished routing, reset routing
+            route_params = {};
+        }
+
         if (route_params.start_lon) { // began routing already but not finished
             route_params.end_lon = click_lon;
             route_params.end_lat = click_lat;